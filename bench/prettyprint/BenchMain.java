@@ -0,0 +1,58 @@
+package prettyprint;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Runs the JMH benchmarks (with the gc profiler attached) and then reports
+ * each result normalized per doc node / list element, i.e. ns/node and
+ * bytes allocated per node. Accepts the usual JMH command line options.
+ */
+public final class BenchMain {
+
+    private BenchMain() {}
+
+    public static void main(String[] args)
+            throws RunnerException, CommandLineOptionException {
+        // the maven profile passes all options through as one argument
+        String[] jmhArgs = Arrays.stream(args)
+                .flatMap(a -> Arrays.stream(a.trim().split("\\s+")))
+                .filter(a -> !a.isEmpty())
+                .toArray(String[]::new);
+        Options opts = new OptionsBuilder()
+                .parent(new CommandLineOptions(jmhArgs))
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(opts).run();
+
+        System.out.println();
+        System.out.printf("%-56s %-26s %12s %12s%n",
+                "benchmark", "params", "ns/node", "B/node");
+        for (RunResult r : results) {
+            var params = r.getParams();
+            String n = params.getParam("nodes") != null
+                    ? params.getParam("nodes") : params.getParam("size");
+            if (n == null) {
+                continue;
+            }
+            double count = Double.parseDouble(n);
+            Result<?> alloc = r.getSecondaryResults().get("gc.alloc.rate.norm");
+            String shape = params.getParam("shape");
+            System.out.printf("%-56s %-26s %12.3f %12.3f%n",
+                    params.getBenchmark(),
+                    (shape == null ? "" : shape + " ") + n,
+                    r.getPrimaryResult().getScore() / count,
+                    alloc == null ? Double.NaN : alloc.getScore() / count);
+        }
+    }
+}
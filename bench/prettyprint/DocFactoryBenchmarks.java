@@ -0,0 +1,51 @@
+package prettyprint;
+
+import org.openjdk.jmh.annotations.*;
+import prettyprint.Docs.Doc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static prettyprint.DocFactory.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class DocFactoryBenchmarks {
+
+    @Param({"1000", "100000", "10000000"})
+    public int nodes;
+
+    private List<Doc> docList;
+    private Doc[] docArray;
+    private String[] strings;
+    private final Doc delimiter = mkHzListDoc(docTxt(","), docBrk());
+
+    @Setup(Level.Trial) public void setup() {
+        docList = DocShapes.items(nodes);
+        docArray = docList.toArray(new Doc[0]);
+        strings = new String[nodes];
+        for (int i = 0; i < nodes; i++) {
+            strings[i] = i % 2 == 0 ? "item" + (i % 1000) : Docs.BRK;
+        }
+    }
+
+    @Benchmark public Doc mkHzListDocArray() {
+        return mkHzListDoc(docArray);
+    }
+
+    @Benchmark public Doc mkHzListDocList() {
+        return mkHzListDoc(docList);
+    }
+
+    @Benchmark public Doc mkHzListDocStrings() {
+        return mkHzListDoc(strings);
+    }
+
+    @Benchmark public Doc mkHzJnListDoc() {
+        return DocFactory.mkHzJnListDoc(delimiter, docList);
+    }
+}
@@ -0,0 +1,93 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static prettyprint.DocFactory.*;
+
+/**
+ * The doc shapes the printer benchmarks are parameterized over. Each shape
+ * builds a doc of (roughly) the requested number of nodes.
+ */
+public enum DocShapes {
+
+    // one long group of comma separated items with no breaks at all
+    WIDE_FLAT {
+        @Override Doc build(int nodes) {
+            return docGroup(mkHzJnListDoc(docTxt(", "), items(nodes / 4)));
+        }
+    },
+
+    // items joined by a comma and a break, inside a single nested group
+    // (so every break is rendered as a newline)
+    JOIN_BREAKS {
+        @Override Doc build(int nodes) {
+            return docGroup(docNst(2, mkHzJnListDoc(
+                    mkHzListDoc(docTxt(","), docBrk()), items(nodes / 5))));
+        }
+    },
+
+    // items joined by a comma and a grouped break; the usual way of filling
+    // lines "as many per line as fit", where every group triggers a fits
+    // scan of the continuation
+    JOIN_GROUPED_BREAKS {
+        @Override Doc build(int nodes) {
+            return docNst(2, mkHzJnListDoc(
+                    mkHzListDoc(docTxt(","), docGroup(docBrk())),
+                    items(nodes / 6)));
+        }
+    },
+
+    // the same items and layout as JOIN_GROUPED_BREAKS, as a fill, whose
+    // breaks are each decided by measuring just the item after them
+    FILL {
+        @Override Doc build(int nodes) {
+            return docNst(2, mkFillJnListDoc(docTxt(","), items(nodes / 3)));
+        }
+    },
+
+    // a balanced tree of s-expression-like groups (json, lisp, ...)
+    NESTED_SEXPR {
+        @Override Doc build(int nodes) {
+            // each list contributes about 4 nodes per child
+            List<Doc> level = items(Math.max(1, nodes / 2));
+            while (level.size() > 1) {
+                List<Doc> next = new ArrayList<>();
+                for (int i = 0; i < level.size(); i = i + FANOUT) {
+                    List<Doc> kids = level.subList(i,
+                            Math.min(level.size(), i + FANOUT));
+                    next.add(docGroup(docTxt("("),
+                            docNst(1, mkHzJnListDoc(docBrk(), kids)),
+                            docTxt(")")));
+                }
+                level = next;
+            }
+            return level.get(0);
+        }
+    },
+
+    // a single chain of groups nested inside each other
+    DEEP_GROUPS {
+        @Override Doc build(int nodes) {
+            Doc d = docTxt("x");
+            for (int i = 0; i < nodes / 7; i++) {
+                d = docGroup(docTxt("("), d, docBrk(), docTxt(")"));
+            }
+            return d;
+        }
+    };
+
+    private static final int FANOUT = 4;
+
+    abstract Doc build(int nodes);
+
+    static List<Doc> items(int n) {
+        List<Doc> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(docTxt("item" + (i % 1000)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package prettyprint;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import prettyprint.Docs.Doc;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class PrinterBenchmarks {
+
+    @Param({"WIDE_FLAT", "JOIN_BREAKS", "JOIN_GROUPED_BREAKS", "FILL",
+            "NESTED_SEXPR", "DEEP_GROUPS"})
+    public DocShapes shape;
+
+    @Param({"1000", "100000", "10000000"})
+    public int nodes;
+
+    @Param({"80"})
+    public int width;
+
+    private Doc doc;
+    private StringBuilder out;
+    private LayoutCache cache;
+
+    @Setup(Level.Trial) public void setup() {
+        doc = shape.build(nodes);
+        out = new StringBuilder();
+        cache = new LayoutCache(Long.MAX_VALUE);
+    }
+
+    @Benchmark public StringBuilder format() {
+        out.setLength(0);
+        new PrettyPrinter(width, out).format(doc);
+        return out;
+    }
+
+    // formats on the thread's reusable printer instead of a new one
+    @Benchmark public StringBuilder formatReused() {
+        out.setLength(0);
+        PrettyPrinter.print(doc, width, out);
+        return out;
+    }
+
+    // re-renders the doc with every group's layout already cached, i.e. the
+    // best case for re-rendering an edited doc
+    @Benchmark public StringBuilder formatCached() {
+        out.setLength(0);
+        PrettyPrinter p = new PrettyPrinter(width, out);
+        p.setLayoutCache(cache);
+        p.format(doc);
+        return out;
+    }
+
+    @Benchmark public StringBuilder formatParallel() {
+        out.setLength(0);
+        new ParallelRenderer(width).render(doc, out);
+        return out;
+    }
+
+    // utf-8 output, encoded by the printer itself vs. through a writer
+    @Benchmark public void formatUtf8() {
+        new PrettyPrinter(width, OutputStream.nullOutputStream()).format(doc);
+    }
+
+    @Benchmark public void formatUtf8Writer() {
+        new PrettyPrinter(width, new OutputStreamWriter(
+                OutputStream.nullOutputStream(), StandardCharsets.UTF_8))
+                .format(doc);
+    }
+
+    @Benchmark public StringBuilder formatLinear() {
+        out.setLength(0);
+        new LinearPrettyPrinter(width, out).format(doc);
+        return out;
+    }
+
+    // how far (in break mode) the doc can be measured before its first line
+    // break; this is the walk fits_ does over the continuation of a group
+    @Benchmark public void fits(Blackhole bh) {
+        bh.consume(new PrettyPrinter(width, out).fits(Integer.MAX_VALUE, doc));
+    }
+}
@@ -0,0 +1,76 @@
+package prettyprint;
+
+import org.openjdk.jmh.annotations.*;
+import prettyprint.immutableadts.EmptyList;
+import prettyprint.immutableadts.IList;
+import prettyprint.immutableadts.NonEmptyList;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same tail recursive sum over a list of cons cells, written with
+ * {@link TailCall#sus}/{@link TailCall#ret} (a fresh step and lambda per
+ * element), with a {@link TailCall.Frame} (updated in place) and as a plain
+ * while loop, the floor the other two are measured against.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TailCallBenchmarks {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private IList<Integer> list;
+
+    @Setup(Level.Trial) public void setup() {
+        IList<Integer> result = EmptyList.emp();
+        for (int i = 0; i < size; i++) {
+            result = new NonEmptyList<>(i, result);
+        }
+        list = result;
+    }
+
+    @Benchmark public long suspend() {
+        return sum_(list, 0).eval();
+    }
+
+    private static TailCall<Long> sum_(IList<Integer> l, long acc) {
+        return l.isEmpty()
+                ? TailCall.ret(acc)
+                : TailCall.sus(() -> sum_(l.tail(), acc + l.head()));
+    }
+
+    @Benchmark public long frame() {
+        return new TailCall.Frame<Long>() {
+            IList<Integer> l = list;
+            long acc = 0;
+
+            @Override protected boolean step() {
+                if (l.isEmpty()) {
+                    return false;
+                }
+                acc = acc + l.head();
+                l = l.tail();
+                return true;
+            }
+
+            @Override protected Long result() {
+                return acc;
+            }
+        }.eval();
+    }
+
+    @Benchmark public long loop() {
+        long acc = 0;
+        IList<Integer> l = list;
+        while (!l.isEmpty()) {
+            acc = acc + l.head();
+            l = l.tail();
+        }
+        return acc;
+    }
+}
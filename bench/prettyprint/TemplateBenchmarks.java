@@ -0,0 +1,53 @@
+package prettyprint;
+
+import org.openjdk.jmh.annotations.*;
+import prettyprint.Docs.Doc;
+
+import java.util.concurrent.TimeUnit;
+
+import static prettyprint.DocFactory.*;
+
+/**
+ * Renders a log line with a few fields, by building its doc from scratch
+ * every time vs. by filling in the holes of a compiled template; at a width
+ * the line fits in (which the template renders without laying it out) and
+ * at one it doesn't.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TemplateBenchmarks {
+
+    @Param({"120", "40"})
+    public int width;
+
+    private final DocTemplate template = DocTemplate.compile(h ->
+            logLine(h.hole("level"), h.hole("message"), h.hole("user"),
+                    h.hole("took")));
+
+    private int event = 0;
+
+    private static Doc logLine(Doc level, Doc message, Doc user, Doc took) {
+        return docGroup(docTxt("["), level, docTxt("]"), docBrk(),
+                docNst(2, message, docBrk(), docGroup(docTxt("{"),
+                        docNst(1, docTxt("user="), user, docTxt(","), docBrk(),
+                                docTxt("took="), took, docTxt("ms")),
+                        docTxt("}"))));
+    }
+
+    @Benchmark public String build() {
+        event = event + 1;
+        return logLine(docTxt("INFO"), docTxt("request served"),
+                docTxt("user" + (event & 1023)), docTxt("" + (event & 63)))
+                .prettyPrint(width);
+    }
+
+    @Benchmark public String template() {
+        event = event + 1;
+        return template.render(width, "INFO", "request served",
+                "user" + (event & 1023), event & 63);
+    }
+}
@@ -0,0 +1,67 @@
+package prettyprint.immutableadts;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class IListBenchmarks {
+
+    @Param({"1000", "10000", "1000000"})
+    public int size;
+
+    private IList<Integer> list;
+    private IList<Integer> other;
+
+    @Setup(Level.Trial) public void setup() {
+        List<Integer> xs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            xs.add(i);
+        }
+        list = IList.of(xs);
+        other = IList.of(xs);
+    }
+
+    @Benchmark public int length() {
+        return list.length();
+    }
+
+    @Benchmark public int get() {
+        return list.get(size / 2);
+    }
+
+    @Benchmark public int iterate() {
+        int sum = 0;
+        for (int x : list) {
+            sum = sum + x;
+        }
+        return sum;
+    }
+
+    @Benchmark public IList<Integer> appendAll() {
+        return list.appendAll(other);
+    }
+
+    @Benchmark public IList<Integer> map() {
+        return list.map(x -> x + 1);
+    }
+
+    @Benchmark public IList<Integer> mapThenFilter() {
+        return list.map(x -> x + 1).filter(x -> x % 2 == 0);
+    }
+
+    @Benchmark public IList<Integer> mapFilter() {
+        return list.mapFilter(x -> x + 1, x -> x % 2 == 0);
+    }
+
+    @Benchmark public int foldRight() {
+        return list.foldRight(0, (x, acc) -> acc + x);
+    }
+}
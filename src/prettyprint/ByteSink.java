@@ -0,0 +1,195 @@
+package prettyprint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Encodes output as UTF-8 straight into a byte buffer, without going
+ * through a {@code Writer} (or a {@code String}) first. Text docs that were
+ * encoded when they were built (see {@link DocFactory#docTxtUtf8}) are
+ * copied in as they are, and indentation comes from a preencoded run of
+ * spaces.
+ * <p>
+ * The buffer is either drained to a channel or stream whenever it fills
+ * up, or is itself the destination, in which case running out of room in it
+ * throws a {@link java.nio.BufferOverflowException}.
+ */
+final class ByteSink implements Sink {
+
+    private static final byte[] SPACES = new byte[64];
+
+    static {
+        Arrays.fill(SPACES, (byte) ' ');
+    }
+
+    private final ByteBuffer buffer;
+    // where a full buffer is drained to; both null if the buffer is the
+    // destination
+    private final WritableByteChannel channel;
+    private final OutputStream stream;
+
+    ByteSink(WritableByteChannel out, int bufferSize) {
+        this(ByteBuffer.allocate(checkSize(bufferSize)), out, null);
+        if (out == null) {
+            throw new IllegalArgumentException("can't write to a null channel");
+        }
+    }
+
+    ByteSink(OutputStream out, int bufferSize) {
+        this(ByteBuffer.allocate(checkSize(bufferSize)), null, out);
+        if (out == null) {
+            throw new IllegalArgumentException("can't write to a null stream");
+        }
+    }
+
+    ByteSink(ByteBuffer out) {
+        this(out, null, null);
+        if (out == null) {
+            throw new IllegalArgumentException("can't write to a null buffer");
+        }
+    }
+
+    private ByteSink(ByteBuffer buffer, WritableByteChannel channel,
+                     OutputStream stream) {
+        this.buffer = buffer;
+        this.channel = channel;
+        this.stream = stream;
+    }
+
+    private static int checkSize(int bufferSize) {
+        // room for the longest encoded code point
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException(
+                    "buffer size must be at least 4");
+        }
+        return bufferSize;
+    }
+
+    @Override public void text(Docs.DocText d) {
+        byte[] utf8 = d.utf8();
+        if (utf8 == null) {
+            text(d.text());
+        } else {
+            put(utf8, utf8.length);
+        }
+    }
+
+    @Override public void text(String s) {
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            // encode as many chars as surely fit (a code point takes at
+            // most four bytes), then make room for more
+            int end = n;
+            if (drains()) {
+                if (buffer.remaining() < 4) {
+                    drain();
+                }
+                end = Math.min(n, i + buffer.remaining() / 4);
+            }
+            i = encode(s, i, end);
+        }
+    }
+
+    // encodes the chars of s starting at i and before end (and the low
+    // surrogate after end - 1, if that's a high one); returns where it
+    // stopped
+    private int encode(String s, int i, int end) {
+        ByteBuffer b = buffer;
+        while (i < end) {
+            char c = s.charAt(i);
+            i = i + 1;
+            if (c < 0x80) {
+                b.put((byte) c);
+            } else if (c < 0x800) {
+                b.put((byte) (0xC0 | c >> 6));
+                b.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i < s.length()
+                        && Character.isLowSurrogate(s.charAt(i))) {
+                    int cp = Character.toCodePoint(c, s.charAt(i));
+                    i = i + 1;
+                    b.put((byte) (0xF0 | cp >> 18));
+                    b.put((byte) (0x80 | cp >> 12 & 0x3F));
+                    b.put((byte) (0x80 | cp >> 6 & 0x3F));
+                    b.put((byte) (0x80 | cp & 0x3F));
+                } else {
+                    // unpaired, replaced like String.getBytes does
+                    b.put((byte) '?');
+                }
+            } else {
+                b.put((byte) (0xE0 | c >> 12));
+                b.put((byte) (0x80 | c >> 6 & 0x3F));
+                b.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        return i;
+    }
+
+    @Override public void newline(int indent) {
+        if (drains() && !buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) '\n');
+        while (indent > 0) {
+            int n = Math.min(indent, SPACES.length);
+            put(SPACES, n);
+            indent = indent - n;
+        }
+    }
+
+    @Override public void flush() {
+        if (!drains()) {
+            return;
+        }
+        drain();
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private boolean drains() {
+        return channel != null || stream != null;
+    }
+
+    private void put(byte[] bytes, int n) {
+        if (drains() && buffer.remaining() < n) {
+            drain();
+            if (n > buffer.capacity()) {
+                write(ByteBuffer.wrap(bytes, 0, n));
+                return;
+            }
+        }
+        buffer.put(bytes, 0, n);
+    }
+
+    private void drain() {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) {
+        try {
+            if (stream != null) {
+                stream.write(bytes.array(), bytes.arrayOffset() + bytes.position(),
+                        bytes.remaining());
+                bytes.position(bytes.limit());
+            } else {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package prettyprint;
 
 import prettyprint.Docs.Doc;
-import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocConcat;
 import prettyprint.Docs.DocNil;
 import prettyprint.Docs.DocText;
 
 import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public final class DocFactory {
 
+    // the largest concat docConcat copies the docs of (rather than keeping
+    // it whole)
+    private static final int MAX_SPLICED = 32;
+
     private DocFactory() {}
 
     // mkHzJnListDoc = horizontal join list doc
@@ -19,22 +25,60 @@ public final class DocFactory {
 
     // mkHzJnListDoc = horizontal join list doc
     public static Doc mkHzJnListDoc(Doc delimiterDoc, List<Doc> docs) {
-        List<Doc> result = new ArrayList<>();
-        boolean first = true;
+        int n = 0;
+        for (Doc doc : docs) {
+            if (doc != DocNil.INSTANCE) {
+                n = n + 1;
+            }
+        }
+        if (n == 0) {
+            return DocNil.INSTANCE;
+        }
+        Doc[] result = new Doc[2 * n - 1];
+        int i = 0;
         for (Doc doc : docs) {
             if (doc != DocNil.INSTANCE) {
-                if (first) {
-                    result.add(doc);
-                    first = false;
-                } else {
-                    result.add(delimiterDoc);
-                    result.add(doc);
+                if (i > 0) {
+                    result[i++] = delimiterDoc;
                 }
+                result[i++] = doc;
             }
         }
         return mkHzListDoc(result);
     }
 
+    /**
+     * A join of the {@code n} docs produced by {@code items}, where each item
+     * (and the delimiter following it) is only built once the printer gets
+     * to it. Nothing is retained between renderings, so a list of any length
+     * can be printed in memory proportional to its nesting depth, at the cost
+     * of calling {@code items} again for every rendering.
+     */
+    public static Doc mkLazyHzJnListDoc(Doc delimiterDoc, int n,
+                                        IntFunction<Doc> items) {
+        if (n < 0) {
+            throw new IllegalArgumentException(
+                    "can't construct a list doc w/ a negative length");
+        }
+        if (delimiterDoc == null || items == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a list doc w/ a null delimiter or items");
+        }
+        return lazyJoinFrom(delimiterDoc, 0, n, items);
+    }
+
+    private static Doc lazyJoinFrom(Doc delimiterDoc, int i, int n,
+                                    IntFunction<Doc> items) {
+        if (i == n) {
+            return DocNil.INSTANCE;
+        }
+        return docLazy(() -> {
+            Doc item = items.apply(i);
+            return i + 1 == n ? item : new DocConcat(item, delimiterDoc,
+                    lazyJoinFrom(delimiterDoc, i + 1, n, items));
+        });
+    }
+
     public static Doc mkHzListDoc(List<Doc> docs) {
         Doc[] array = new Doc[docs.size()];
         return mkHzListDoc(docs.toArray(array));
@@ -55,20 +99,47 @@ public final class DocFactory {
         if (docs.length == 1) {
             return docs[0];
         }
-        List<Doc> docList = new LinkedList<>(Arrays.asList(docs));
-
-        ListIterator<Doc> docIter = docList.listIterator(docList.size());
-        Doc result = docIter.previous();
+        return new DocConcat(docs);
+    }
 
-        // DocCons(DocText([ERROR]),DocCons(DocText( ),DocCons(DocText(Prelude:3:0),DocText(:))))
-        //sDoc1: DocCons(DocText([ERROR]),DocCons(DocText( ),DocText(moo)))
-        //sDoc2: DocCons(DocCons(DocText([ERROR]),DocText( )),DocText(moo))
+    /**
+     * The concatenation of {@code pieces}, for combining docs that may be
+     * large (or concats themselves): the docs in small concats are spliced
+     * in directly, so combining many small pieces doesn't nest them ever
+     * deeper, while large ones are kept whole (and shared) rather than
+     * copied.
+     */
+    public static Doc docConcat(Doc... pieces) {
+        int n = 0;
+        Doc last = DocNil.INSTANCE;
+        for (Doc piece : pieces) {
+            n = n + spliced(piece);
+            last = piece == DocNil.INSTANCE ? last : piece;
+        }
+        if (n == spliced(last)) {
+            // at most one piece isn't nil
+            return last;
+        }
+        Doc[] result = new Doc[n];
+        int i = 0;
+        for (Doc piece : pieces) {
+            if (piece instanceof DocConcat c && spliced(c) == c.size()) {
+                for (int j = 0; j < c.size(); j++) {
+                    result[i++] = c.get(j);
+                }
+            } else if (piece != DocNil.INSTANCE) {
+                result[i++] = piece;
+            }
+        }
+        return mkHzListDoc(result);
+    }
 
-        while (docIter.hasPrevious()) {
-            Doc prev2 = docIter.previous();
-            result = new DocCons(prev2, result);
+    // the number of docs piece contributes to a concat
+    private static int spliced(Doc piece) {
+        if (piece instanceof DocConcat c && c.size() <= MAX_SPLICED) {
+            return c.size();
         }
-        return result;
+        return piece == DocNil.INSTANCE ? 0 : 1;
     }
 
     // Doc util library factory methods
@@ -81,6 +152,17 @@ public final class DocFactory {
         return new DocText(s);
     }
 
+    /**
+     * Like {@link #docTxt}, but the text is encoded as UTF-8 once, up front,
+     * so printing the doc to bytes (to a channel, stream or byte buffer)
+     * copies the encoded bytes rather than encoding it again each time. It
+     * makes the doc about twice as big, so it's worth it for text that's
+     * printed many times over.
+     */
+    public static Doc docTxtUtf8(String s) {
+        return new DocText(s, true);
+    }
+
     public static Doc docNst(int i, Doc s) {
         return new Docs.DocNest(i, s);
     }
@@ -93,6 +175,14 @@ public final class DocFactory {
         return DocNil.INSTANCE;
     }
 
+    /**
+     * A doc that is only built when the printer reaches it; see
+     * {@link Docs.DocLazy}.
+     */
+    public static Doc docLazy(Supplier<Doc> supplier) {
+        return new Docs.DocLazy(supplier);
+    }
+
     // :/:
     public static Doc docBrk() {
         return Docs.DocBreak.INSTANCE;
@@ -113,4 +203,50 @@ public final class DocFactory {
     public static Doc docGroup(String ... docs) {
         return new Docs.DocGroup(mkHzListDoc(docs));
     }
+
+    /**
+     * The items with a break between each two, where each break is printed
+     * as a space if the item after it still fits on the line, and as a line
+     * break otherwise; see {@link Docs.DocFill}. Laying a fill out takes time
+     * linear in the number of items.
+     */
+    public static Doc docFill(List<Doc> items) {
+        List<Doc> result = new ArrayList<>(items.size());
+        for (Doc item : items) {
+            if (item != DocNil.INSTANCE) {
+                result.add(item);
+            }
+        }
+        if (result.size() <= 1) {
+            return result.isEmpty() ? DocNil.INSTANCE : result.get(0);
+        }
+        return new Docs.DocFill(result.toArray(new Doc[0]));
+    }
+
+    public static Doc docFill(Doc... items) {
+        return docFill(Arrays.asList(items));
+    }
+
+    // fills the words of s, split at runs of whitespace, like a paragraph
+    public static Doc docFill(String s) {
+        return docFill(Arrays.stream(s.trim().split("\\s+"))
+                .filter(w -> !w.isEmpty())
+                .map(DocFactory::docTxt)
+                .toList());
+    }
+
+    // mkFillJnListDoc = fill join list doc; the delimiter stays on the line
+    // with the item before it
+    public static Doc mkFillJnListDoc(Doc delimiterDoc, List<Doc> docs) {
+        List<Doc> items = docs.stream()
+                .filter(doc -> doc != DocNil.INSTANCE)
+                .toList();
+        List<Doc> result = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            result.add(i + 1 < items.size()
+                    ? new DocConcat(items.get(i), delimiterDoc)
+                    : items.get(i));
+        }
+        return docFill(result);
+    }
 }
@@ -0,0 +1,337 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import prettyprint.Docs.DocConcat;
+import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocGroup;
+import prettyprint.Docs.DocNest;
+import prettyprint.Docs.DocNil;
+import prettyprint.Docs.DocText;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An opt-in alternative to the {@link DocFactory} methods that hands out a
+ * single shared node for structurally identical docs (hash-consing), so
+ * generators that produce the same punctuation, indentation and subtrees
+ * over and over don't pay for a fresh copy each time. Docs are immutable, so
+ * sharing them is always safe.
+ * <p>
+ * Single printable ascii characters are shared through a preallocated table
+ * common to all interners; everything else goes through a table of at most
+ * {@code maxEntries} nodes, from which the least recently used ones are
+ * dropped. Since the children of a node built by an interner are already
+ * shared, nodes are looked up by the identity of their children, which
+ * takes constant time whatever their size. Lazy docs are never shared.
+ * <p>
+ * An interner isn't thread safe.
+ */
+public final class DocInterner {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+    // rough (compressed oops) sizes of the nodes, for estimating savings
+    private static final int TEXT_BYTES = 16;
+    private static final int STRING_BYTES = 40;
+    private static final int CONS_BYTES = 32;
+    private static final int NEST_BYTES = 32;
+    private static final int GROUP_BYTES = 24;
+    private static final int CONCAT_BYTES = 40;
+    private static final int ARRAY_BYTES = 16;
+
+    private static final DocText[] ASCII = new DocText[128];
+
+    static {
+        for (char c = ' '; c < 127; c++) {
+            ASCII[c] = new DocText(String.valueOf(c));
+        }
+    }
+
+    private static final int TEXT = 0;
+    private static final int CONS = 1;
+    private static final int NEST = 2;
+    private static final int GROUP = 3;
+    private static final int CONCAT = 4;
+    private static final int TEXT_UTF8 = 5;
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Doc> table;
+
+    private long nodes = 0;
+    private long shared = 0;
+    private long bytesSaved = 0;
+
+    /**
+     * How much an interner has shared so far: the number of nodes asked
+     * for, how many of those were an existing node, and an estimate of the
+     * memory that saved.
+     */
+    public record Stats(long nodes, long shared, long bytesSaved) { }
+
+    public DocInterner() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public DocInterner(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException(
+                    "can't construct an interner w/ a negative size");
+        }
+        this.maxEntries = maxEntries;
+        this.table = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key, Doc> e) {
+                return size() > DocInterner.this.maxEntries;
+            }
+        };
+    }
+
+    public Stats stats() {
+        return new Stats(nodes, shared, bytesSaved);
+    }
+
+    /** The number of nodes in the intern table. */
+    public int size() {
+        return table.size();
+    }
+
+    public Doc docTxt(String s) {
+        if (s == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a text doc w/ null text");
+        }
+        nodes = nodes + 1;
+        if (s.length() == 1 && s.charAt(0) < 128 && ASCII[s.charAt(0)] != null) {
+            return saved(ASCII[s.charAt(0)], TEXT_BYTES + STRING_BYTES + 1);
+        }
+        Key key = new Key(TEXT, s, null, 0);
+        Doc result = table.get(key);
+        if (result != null) {
+            return saved(result, TEXT_BYTES + STRING_BYTES + s.length());
+        }
+        return put(key, new DocText(s));
+    }
+
+    // see DocFactory.docTxtUtf8; never shared with plain texts, so the
+    // bytes aren't lost
+    public Doc docTxtUtf8(String s) {
+        if (s == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a text doc w/ null text");
+        }
+        nodes = nodes + 1;
+        Key key = new Key(TEXT_UTF8, s, null, 0);
+        Doc result = table.get(key);
+        if (result != null) {
+            return saved(result, TEXT_BYTES + STRING_BYTES + ARRAY_BYTES
+                    + 2 * s.length());
+        }
+        return put(key, new DocText(s, true));
+    }
+
+    public Doc docNst(int i, Doc d) {
+        nodes = nodes + 1;
+        Key key = new Key(NEST, d, null, i);
+        Doc result = table.get(key);
+        if (result != null) {
+            return saved(result, NEST_BYTES);
+        }
+        return put(key, new DocNest(i, d));
+    }
+
+    public Doc docNst(int i, Doc... docs) {
+        return docNst(i, mkHzListDoc(docs));
+    }
+
+    public Doc docGroup(Doc d) {
+        nodes = nodes + 1;
+        Key key = new Key(GROUP, d, null, 0);
+        Doc result = table.get(key);
+        if (result != null) {
+            return saved(result, GROUP_BYTES);
+        }
+        return put(key, new DocGroup(d));
+    }
+
+    public Doc docGroup(Doc... docs) {
+        return docGroup(mkHzListDoc(docs));
+    }
+
+    public Doc docCons(Doc hd, Doc tl) {
+        nodes = nodes + 1;
+        Key key = new Key(CONS, hd, tl, 0);
+        Doc result = table.get(key);
+        if (result != null) {
+            return saved(result, CONS_BYTES);
+        }
+        return put(key, new DocCons(hd, tl));
+    }
+
+    // see DocFactory.mkHzListDoc
+    public Doc mkHzListDoc(Doc... docs) {
+        if (docs.length == 0) {
+            return DocNil.INSTANCE;
+        }
+        if (docs.length == 1) {
+            return docs[0];
+        }
+        nodes = nodes + 1;
+        Key key = new Key(CONCAT, docs.clone(), null, 0);
+        Doc result = table.get(key);
+        if (result != null) {
+            return saved(result, CONCAT_BYTES + 4 * docs.length);
+        }
+        return put(key, new DocConcat(docs));
+    }
+
+    public Doc mkHzListDoc(List<Doc> docs) {
+        return mkHzListDoc(docs.toArray(new Doc[0]));
+    }
+
+    // see DocFactory.mkHzJnListDoc
+    public Doc mkHzJnListDoc(Doc delimiterDoc, List<Doc> docs) {
+        List<Doc> result = new ArrayList<>();
+        for (Doc doc : docs) {
+            if (doc != DocNil.INSTANCE) {
+                if (!result.isEmpty()) {
+                    result.add(delimiterDoc);
+                }
+                result.add(doc);
+            }
+        }
+        return mkHzListDoc(result);
+    }
+
+    public Doc mkHzJnListDoc(Doc delimiterDoc, Doc... docs) {
+        return mkHzJnListDoc(delimiterDoc, Arrays.asList(docs));
+    }
+
+    /**
+     * Rebuilds {@code doc} out of shared nodes, so that it shares all of
+     * its identical subtrees (with each other and with the docs this
+     * interner built before).
+     */
+    public Doc intern(Doc doc) {
+        IdentityHashMap<Doc, Doc> done = new IdentityHashMap<>();
+        // the rebuilt docs, which a doc's children are on top of by the time
+        // it's left
+        ArrayList<Doc> results = new ArrayList<>();
+        DocWalk.postOrder(doc, new DocWalk.Visitor() {
+            @Override public Doc[] enter(Doc d) {
+                Doc result = done.get(d);
+                if (result == null) {
+                    if (d instanceof DocCons || d instanceof DocConcat
+                            || d instanceof DocNest || d instanceof DocGroup) {
+                        return DocWalk.children(d);
+                    }
+                    result = d instanceof DocText t ? text(t) : d;
+                }
+                results.add(result);
+                return null;
+            }
+
+            @Override public void leave(Doc d, Doc[] kids) {
+                Doc result = switch (d) {
+                    case DocCons c -> {
+                        Doc tl = pop(results);
+                        yield docCons(pop(results), tl);
+                    }
+                    case DocConcat c -> {
+                        Doc[] docs = new Doc[kids.length];
+                        for (int i = docs.length - 1; i >= 0; i--) {
+                            docs[i] = pop(results);
+                        }
+                        yield mkHzListDoc(docs);
+                    }
+                    case DocNest n -> docNst(n.indent(), pop(results));
+                    case DocGroup g -> docGroup(pop(results));
+                    default -> throw new IllegalStateException();
+                };
+                done.put(d, result);
+                results.add(result);
+            }
+        });
+        return results.get(0);
+    }
+
+    private Doc text(DocText t) {
+        return t.utf8() != null ? docTxtUtf8(t.text()) : docTxt(t.text());
+    }
+
+    private static Doc pop(ArrayList<Doc> results) {
+        return results.remove(results.size() - 1);
+    }
+
+    private Doc saved(Doc result, int bytes) {
+        shared = shared + 1;
+        bytesSaved = bytesSaved + bytes;
+        return result;
+    }
+
+    private Doc put(Key key, Doc d) {
+        if (maxEntries > 0) {
+            table.put(key, d);
+        }
+        return d;
+    }
+
+    // the children of a node are compared by identity (for a concat, those
+    // in its array), its text by value
+    private static final class Key {
+
+        private final int kind;
+        private final Object a;
+        private final Doc b;
+        private final int n;
+
+        private Key(int kind, Object a, Doc b, int n) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+            this.n = n;
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Key k && kind == k.kind && n == k.n
+                    && b == k.b && switch (kind) {
+                        case TEXT, TEXT_UTF8 -> a.equals(k.a);
+                        case CONCAT -> sameDocs((Doc[]) a, (Doc[]) k.a);
+                        default -> a == k.a;
+                    };
+        }
+
+        @Override public int hashCode() {
+            int h = switch (kind) {
+                case TEXT, TEXT_UTF8 -> a.hashCode();
+                case CONCAT -> docsHash((Doc[]) a);
+                default -> System.identityHashCode(a);
+            };
+            h = 31 * h + System.identityHashCode(b);
+            return 31 * (31 * h + n) + kind;
+        }
+
+        private static boolean sameDocs(Doc[] xs, Doc[] ys) {
+            if (xs.length != ys.length) {
+                return false;
+            }
+            for (int i = 0; i < xs.length; i++) {
+                if (xs[i] != ys[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int docsHash(Doc[] docs) {
+            int h = 1;
+            for (Doc d : docs) {
+                h = 31 * h + System.identityHashCode(d);
+            }
+            return h;
+        }
+    }
+}
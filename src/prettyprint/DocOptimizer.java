@@ -0,0 +1,248 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import prettyprint.Docs.DocConcat;
+import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocFill;
+import prettyprint.Docs.DocGroup;
+import prettyprint.Docs.DocNest;
+import prettyprint.Docs.DocNil;
+import prettyprint.Docs.DocText;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Rewrites docs into an equivalent form with fewer nodes, which prints the
+ * same at every width but takes the printers fewer steps to lay out:
+ * <ul>
+ * <li>nils (and empty texts) are dropped from concats and conses, and
+ *     nested concats and conses are flattened into a single concat;</li>
+ * <li>adjacent texts are merged into one;</li>
+ * <li>nests of 0, and nests of docs without breaks, are dropped, and a
+ *     nest directly inside another is folded into it;</li>
+ * <li>groups without breaks in them, and groups whose only content is
+ *     another group, are dropped.</li>
+ * </ul>
+ * Shared subtrees are rewritten once and stay shared; concats are rebuilt
+ * with {@link DocFactory#docConcat}, so one that's shared is only spliced
+ * into the ones it's in if it's small. Texts are only merged if that
+ * doesn't change their width (it can for emoji sequences that are split
+ * between them). Lazy docs are left as they are.
+ * <p>
+ * Docs of any depth are rewritten without recursion. An optimizer isn't
+ * thread safe.
+ */
+public final class DocOptimizer {
+
+    private long nodesBefore = 0;
+    private long nodesAfter = 0;
+
+    /**
+     * How much an optimizer has saved so far: the number of (distinct)
+     * nodes in the docs it was given, and in the docs it rewrote them to.
+     */
+    public record Stats(long nodesBefore, long nodesAfter) { }
+
+    public Stats stats() {
+        return new Stats(nodesBefore, nodesAfter);
+    }
+
+    public Doc optimize(Doc doc) {
+        if (doc == null) {
+            throw new IllegalArgumentException("can't optimize a null doc");
+        }
+        IdentityHashMap<Doc, Integer> refs = countRefs(doc);
+        Doc result = rewrite(doc, refs);
+        nodesBefore = nodesBefore + refs.size();
+        nodesAfter = nodesAfter + countRefs(result).size();
+        return result;
+    }
+
+    // the number of references to each node under doc, from the nodes
+    // under doc (so 0 for doc itself)
+    private static IdentityHashMap<Doc, Integer> countRefs(Doc doc) {
+        IdentityHashMap<Doc, Integer> result = new IdentityHashMap<>();
+        ArrayList<Doc> todo = new ArrayList<>();
+        result.put(doc, 0);
+        todo.add(doc);
+        while (!todo.isEmpty()) {
+            for (Doc kid : DocWalk.children(todo.remove(todo.size() - 1))) {
+                Integer n = result.get(kid);
+                if (n == null) {
+                    todo.add(kid);
+                }
+                result.put(kid, n == null ? 1 : n + 1);
+            }
+        }
+        return result;
+    }
+
+    // a doc's children, rewritten, are on top of the results stack by the
+    // time it's left. the children of a concat or cons are taken to be the
+    // docs in the whole run of concats and conses under it that aren't
+    // referenced from anywhere else. only the rewrites of shared docs are
+    // remembered
+    private static Doc rewrite(Doc doc, IdentityHashMap<Doc, Integer> refs) {
+        IdentityHashMap<Doc, Doc> shared = new IdentityHashMap<>();
+        ArrayList<Doc> results = new ArrayList<>();
+        DocWalk.postOrder(doc, new DocWalk.Visitor() {
+            @Override public Doc[] enter(Doc d) {
+                Doc result = shared.get(d);
+                if (result != null) {
+                    results.add(result);
+                    return null;
+                }
+                Doc[] kids = d instanceof DocCons || d instanceof DocConcat
+                        ? sequence(d, refs) : DocWalk.children(d);
+                if (kids.length == 0) {
+                    results.add(isEmpty(d) ? DocNil.INSTANCE : d);
+                    return null;
+                }
+                return kids;
+            }
+
+            @Override public void leave(Doc d, Doc[] kids) {
+                Doc[] rewritten = new Doc[kids.length];
+                for (int i = kids.length - 1; i >= 0; i--) {
+                    rewritten[i] = results.remove(results.size() - 1);
+                }
+                Doc result = switch (d) {
+                    case DocNest n -> nest(n.indent(), rewritten[0]);
+                    case DocGroup g -> group(rewritten[0]);
+                    case DocFill f -> fill(rewritten);
+                    default -> concat(rewritten);
+                };
+                if (refs.get(d) > 1) {
+                    shared.put(d, result);
+                }
+                results.add(result);
+            }
+        });
+        return results.get(0);
+    }
+
+    // whether d, which has no children, prints nothing
+    private static boolean isEmpty(Doc d) {
+        return switch (d) {
+            case DocText t -> t.text().isEmpty();
+            case DocCons c -> true;
+            case DocConcat c -> true;
+            case DocFill f -> true;
+            default -> false;
+        };
+    }
+
+    // the docs in the run of concats and conses under d that are only
+    // referenced from within the run, in order
+    private static Doc[] sequence(Doc d, IdentityHashMap<Doc, Integer> refs) {
+        ArrayList<Doc> result = new ArrayList<>();
+        ArrayList<Doc> todo = new ArrayList<>();
+        push(todo, DocWalk.children(d));
+        while (!todo.isEmpty()) {
+            Doc kid = todo.remove(todo.size() - 1);
+            if ((kid instanceof DocCons || kid instanceof DocConcat)
+                    && refs.get(kid) == 1) {
+                push(todo, DocWalk.children(kid));
+            } else {
+                result.add(kid);
+            }
+        }
+        return result.toArray(new Doc[0]);
+    }
+
+    private static void push(ArrayList<Doc> todo, Doc[] docs) {
+        for (int i = docs.length - 1; i >= 0; i--) {
+            todo.add(docs[i]);
+        }
+    }
+
+    // spliced (and cleared of nils) by docConcat, then with the texts in a
+    // row merged
+    private static Doc concat(Doc[] parts) {
+        Doc spliced = DocFactory.docConcat(parts);
+        if (!(spliced instanceof DocConcat c)) {
+            return spliced;
+        }
+        Run run = new Run();
+        for (int i = 0; i < c.size(); i++) {
+            run.add(c.get(i));
+        }
+        Doc result = run.finish();
+        return run.merged ? result : c;
+    }
+
+    private static Doc nest(int indent, Doc d) {
+        if (indent == 0 || !d.hasBreak()) {
+            return d;
+        }
+        if (d instanceof DocNest n) {
+            return nest(indent + n.indent(), n.doc());
+        }
+        return new DocNest(indent, d);
+    }
+
+    private static Doc group(Doc d) {
+        if (!d.hasBreak()) {
+            return d;
+        }
+        // a group whose only content is a group is decided the same way
+        // (nests don't change that), so it's the same as the one inside
+        Doc inner = d;
+        while (inner instanceof DocNest n) {
+            inner = n.doc();
+        }
+        return inner instanceof DocGroup ? d : new DocGroup(d);
+    }
+
+    private static Doc fill(Doc[] items) {
+        // the items are all kept, as each one comes with a break before it
+        return items.length == 1 ? items[0] : new DocFill(items);
+    }
+
+    // the docs of a concat being built, with the texts in a row held back
+    // until they can be merged
+    private static final class Run {
+        private final ArrayList<Doc> docs = new ArrayList<>();
+        private final ArrayList<DocText> texts = new ArrayList<>();
+        // whether any texts were merged
+        private boolean merged = false;
+
+        void add(Doc d) {
+            if (d instanceof DocText t) {
+                texts.add(t);
+            } else {
+                mergeTexts();
+                docs.add(d);
+            }
+        }
+
+        Doc finish() {
+            mergeTexts();
+            return DocFactory.mkHzListDoc(docs);
+        }
+
+        private void mergeTexts() {
+            if (texts.size() > 1) {
+                StringBuilder sb = new StringBuilder();
+                long width = 0;
+                boolean encode = false;
+                for (DocText t : texts) {
+                    sb.append(t.text());
+                    width = width + t.flatWidth();
+                    encode = encode || t.utf8() != null;
+                }
+                DocText text = new DocText(sb.toString(), encode);
+                if (text.flatWidth() == width) {
+                    docs.add(text);
+                    merged = true;
+                } else {
+                    docs.addAll(texts);
+                }
+            } else {
+                docs.addAll(texts);
+            }
+            texts.clear();
+        }
+    }
+}
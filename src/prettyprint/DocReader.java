@@ -0,0 +1,262 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import prettyprint.Docs.DocBreak;
+import prettyprint.Docs.DocConcat;
+import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocFill;
+import prettyprint.Docs.DocGroup;
+import prettyprint.Docs.DocLazy;
+import prettyprint.Docs.DocNest;
+import prettyprint.Docs.DocNil;
+import prettyprint.Docs.DocText;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+import static prettyprint.DocWriter.*;
+
+/**
+ * Reads back the docs {@link DocWriter} writes. A doc is either read in
+ * full ({@link #read}), which builds all of its nodes (sharing the ones
+ * that were shared when it was written), or viewed ({@link #view},
+ * {@link #map}), which only decodes a node once a printer gets to it: the
+ * children of a viewed node are {@link DocLazy lazy docs} that carry the
+ * flat width and break status written for them, so printers measure them
+ * without decoding them, and the nodes decoded while printing are garbage
+ * as soon as they're printed. So a doc in a memory mapped file can be
+ * printed without ever having more of it on the heap than its strings and
+ * the part that's being printed.
+ * <p>
+ * Texts get the widths they were written with (see {@link DocWriter}), so
+ * the widths and break status of the composites always agree with them.
+ * A view may be printed by several threads at once. Malformed input throws
+ * an {@link IllegalArgumentException}, when it's read or, for a view, when
+ * the malformed node is reached.
+ */
+public final class DocReader {
+
+    // only ever read at absolute offsets, so views can share it
+    private final ByteBuffer in;
+    private final int[] stringOffsets;
+    // decoded on first use
+    private final String[] strings;
+    private final int nodeCount;
+    private final int index;
+
+    private DocReader(ByteBuffer in) {
+        this.in = in.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (this.in.get(i) != MAGIC[i]) {
+                    throw malformed("not an encoded doc");
+                }
+            }
+            if (this.in.get(MAGIC.length) != VERSION) {
+                throw malformed("unsupported version "
+                        + this.in.get(MAGIC.length));
+            }
+            Cursor c = new Cursor(MAGIC.length + 1);
+            int n = count(c);
+            stringOffsets = new int[n];
+            for (int i = 0; i < n; i++) {
+                stringOffsets[i] = c.at;
+                c.at = checkOffset(varint(c) + c.at);
+            }
+            strings = new String[n];
+            nodeCount = count(c);
+            index = this.in.getInt(this.in.limit() - 4);
+            if (nodeCount == 0 || index < c.at
+                    || (long) index + 4L * nodeCount + 4 != this.in.limit()) {
+                throw malformed("bad node index");
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw malformed("truncated");
+        }
+    }
+
+    /** The doc encoded in {@code bytes}, with all of its nodes built. */
+    public static Doc read(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * The doc encoded in the remaining bytes of {@code in}, with all of its
+     * nodes built; the buffer's position isn't changed.
+     */
+    public static Doc read(ByteBuffer in) {
+        DocReader r = new DocReader(in);
+        Doc[] nodes = new Doc[r.nodeCount];
+        for (int i = 0; i < nodes.length; i++) {
+            int id = i;
+            nodes[i] = r.node(i, kid -> nodes[r.checkKid(kid, id)]);
+        }
+        return nodes[nodes.length - 1];
+    }
+
+    /**
+     * A view of the doc encoded in the remaining bytes of {@code in}, whose
+     * nodes are decoded as they're printed. The buffer mustn't be changed
+     * while the view is in use.
+     */
+    public static Doc view(ByteBuffer in) {
+        DocReader r = new DocReader(in);
+        return r.viewed(r.nodeCount - 1);
+    }
+
+    /** A view of the doc encoded in {@code file}, which is memory mapped. */
+    public static Doc map(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return view(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Doc viewed(int id) {
+        return node(id, kid -> {
+            int k = checkKid(kid, id);
+            int tag = in.get(offset(k)) & 0xFF;
+            int kind = tag & ~HAS_BREAK;
+            if (kind == NIL || kind == BREAK || kind == TEXT || kind == TEXT_UTF8) {
+                return viewed(k);
+            }
+            int width = varint(new Cursor(offset(k) + 1));
+            return new DocLazy(() -> viewed(k), width, (tag & HAS_BREAK) != 0);
+        });
+    }
+
+    // decodes node id, with kids giving the doc for a child's index
+    private Doc node(int id, IntFunction<Doc> kids) {
+        try {
+            Cursor c = new Cursor(offset(id));
+            int tag = in.get(c.at) & 0xFF;
+            c.at = c.at + 1;
+            boolean hasBreak = (tag & HAS_BREAK) != 0;
+            return switch (tag & ~HAS_BREAK) {
+                case NIL -> DocNil.INSTANCE;
+                case BREAK -> DocBreak.INSTANCE;
+                case TEXT -> {
+                    int width = varint(c);
+                    yield new DocText(string(varint(c)), width, false);
+                }
+                case TEXT_UTF8 -> {
+                    int width = varint(c);
+                    yield new DocText(string(varint(c)), width, true);
+                }
+                case NEST -> {
+                    int width = varint(c);
+                    int zigzag = varint(c);
+                    int indent = zigzag >>> 1 ^ -(zigzag & 1);
+                    yield new DocNest(indent, kids.apply(varint(c)), width,
+                            hasBreak);
+                }
+                case GROUP -> {
+                    int width = varint(c);
+                    yield new DocGroup(kids.apply(varint(c)), width, hasBreak);
+                }
+                case CONS -> {
+                    int width = varint(c);
+                    Doc hd = kids.apply(varint(c));
+                    yield new DocCons(hd, kids.apply(varint(c)), width, hasBreak);
+                }
+                case CONCAT -> {
+                    int width = varint(c);
+                    yield new DocConcat(children(c, kids), width, hasBreak);
+                }
+                case FILL -> {
+                    int width = varint(c);
+                    yield new DocFill(children(c, kids), width, hasBreak);
+                }
+                default -> throw malformed("unknown tag " + tag);
+            };
+        } catch (IndexOutOfBoundsException e) {
+            throw malformed("truncated");
+        }
+    }
+
+    private Doc[] children(Cursor c, IntFunction<Doc> kids) {
+        Doc[] result = new Doc[count(c)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = kids.apply(varint(c));
+        }
+        return result;
+    }
+
+    // children are always written before their parents, which also rules
+    // out cycles
+    private int checkKid(int kid, int id) {
+        if (kid < 0 || kid >= id) {
+            throw malformed("bad child index");
+        }
+        return kid;
+    }
+
+    private String string(int i) {
+        if (i < 0 || i >= strings.length) {
+            throw malformed("bad string index");
+        }
+        String result = strings[i];
+        if (result == null) {
+            Cursor c = new Cursor(stringOffsets[i]);
+            byte[] utf8 = new byte[varint(c)];
+            in.get(c.at, utf8);
+            result = new String(utf8, StandardCharsets.UTF_8);
+            strings[i] = result;
+        }
+        return result;
+    }
+
+    private int offset(int id) {
+        return checkOffset(in.getInt(index + 4 * id));
+    }
+
+    private int checkOffset(int offset) {
+        if (offset < 0 || offset > in.limit()) {
+            throw malformed("bad offset");
+        }
+        return offset;
+    }
+
+    // a count of things that each take at least a byte
+    private int count(Cursor c) {
+        int result = varint(c);
+        if (result < 0 || result > in.limit() - c.at) {
+            throw malformed("bad count");
+        }
+        return result;
+    }
+
+    private int varint(Cursor c) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift = shift + 7) {
+            byte b = in.get(c.at);
+            c.at = c.at + 1;
+            result = result | (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw malformed("bad varint");
+    }
+
+    private static IllegalArgumentException malformed(String why) {
+        return new IllegalArgumentException("malformed doc: " + why);
+    }
+
+    // a position in the input, advanced as it's read
+    private static final class Cursor {
+        int at;
+
+        Cursor(int at) {
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import prettyprint.Docs.DocBreak;
+import prettyprint.Docs.DocConcat;
+import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocFill;
+import prettyprint.Docs.DocGroup;
+import prettyprint.Docs.DocLazy;
+import prettyprint.Docs.DocNest;
+import prettyprint.Docs.DocText;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A doc with holes in it, compiled once and then rendered any number of
+ * times with different values in the holes, for docs of the same shape
+ * that are printed over and over (a log line per event, say).
+ * <p>
+ * Compiling works out the flat width of the fixed parts and which nodes
+ * have a hole somewhere under them. Filling in the holes then only builds
+ * new copies of those nodes; the subtrees without holes are shared by all
+ * the instances, and are measured from the widths they already carry. When
+ * the whole instance fits on a line, which only takes adding up the widths
+ * of the values, it's rendered flat straight from the precomputed text
+ * between the holes, without being built or laid out at all.
+ * <p>
+ * Holes are named; positional values go into them in the order they were
+ * first asked for. A hole can occur any number of times. A value is a doc,
+ * or anything else, which is put in as the text of its {@code toString}.
+ * A {@link DocLazy} in the shape is left as it is: holes inside it aren't
+ * filled, whether the instance is rendered flat or laid out, and print as
+ * nothing. A template is immutable, and may be rendered by several threads
+ * at once.
+ */
+public final class DocTemplate {
+
+    // the longest flat rendering of the fixed parts that's kept for
+    // rendering instances that fit straight away
+    static final int MAX_FLAT_CHARS = 1 << 16;
+
+    // a child that's kept as it is in an instance
+    private static final int FIXED = Integer.MIN_VALUE;
+
+    /** Hands out the holes while a template's shape is built. */
+    public static final class Holes {
+
+        private final LinkedHashMap<String, DocText> holes =
+                new LinkedHashMap<>();
+        // the names given to positional holes, which named ones can't reuse
+        private final HashSet<String> positional = new HashSet<>();
+
+        private Holes() { }
+
+        /** The hole named {@code name}, the same doc every time. */
+        public Doc hole(String name) {
+            if (name == null) {
+                throw new IllegalArgumentException(
+                        "can't construct a hole w/ a null name");
+            }
+            if (positional.contains(name)) {
+                throw new IllegalArgumentException("can't construct a hole"
+                        + " named " + name + " w/ a positional hole of that"
+                        + " name");
+            }
+            return newHole(name);
+        }
+
+        /** A new hole, named by its position. */
+        public Doc hole() {
+            String name = String.valueOf(holes.size());
+            if (holes.containsKey(name)) {
+                throw new IllegalArgumentException("can't construct a"
+                        + " positional hole " + name + " w/ a named hole of"
+                        + " that name");
+            }
+            positional.add(name);
+            return newHole(name);
+        }
+
+        private Doc newHole(String name) {
+            // a distinct doc per hole, found by identity
+            return holes.computeIfAbsent(name, n -> new DocText(""));
+        }
+    }
+
+    private final Doc shape;
+    private final List<String> names;
+    private final Map<String, Integer> positions;
+
+    // the nodes with holes under them, children before parents (so the
+    // root is last, if it has any holes at all); for each child of such a
+    // node, refs has the index of the node (>= 0) or of the hole (-1 - h)
+    // that replaces it, or FIXED
+    private final Doc[] spine;
+    private final int[][] refs;
+    // the hole the whole shape is, if it is one
+    private final int rootHole;
+
+    // the flat rendering: the text before each occurrence of a hole, the
+    // hole, and then the text after the last one; null if it's too long
+    private final String[] flatText;
+    private final int[] flatHoles;
+    private final int fixedWidth;
+
+    private DocTemplate(Doc shape, Holes holes) {
+        this.shape = shape;
+        this.names = List.copyOf(holes.holes.keySet());
+        IdentityHashMap<Doc, Integer> holeIds = new IdentityHashMap<>();
+        LinkedHashMap<String, Integer> positions = new LinkedHashMap<>();
+        for (String name : names) {
+            holeIds.put(holes.holes.get(name), positions.size());
+            positions.put(name, positions.size());
+        }
+        this.positions = positions;
+        ArrayList<Doc> spine = new ArrayList<>();
+        ArrayList<int[]> refs = new ArrayList<>();
+        findSpine(holeIds, spine, refs);
+        this.spine = spine.toArray(new Doc[0]);
+        this.refs = refs.toArray(new int[0][]);
+        this.rootHole = holeIds.getOrDefault(shape, -1);
+        this.fixedWidth = shape.flatWidth();
+        if (fixedWidth >= 0 && fixedWidth <= MAX_FLAT_CHARS) {
+            ArrayList<String> text = new ArrayList<>();
+            ArrayList<Integer> at = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            flatten(shape, holeIds, sb, text, at);
+            text.add(sb.toString());
+            this.flatText = text.toArray(new String[0]);
+            this.flatHoles = at.stream().mapToInt(Integer::intValue).toArray();
+        } else {
+            this.flatText = null;
+            this.flatHoles = null;
+        }
+    }
+
+    /**
+     * Compiles the doc {@code shape} builds, with the holes it gets from the
+     * given {@link Holes} in it.
+     */
+    public static DocTemplate compile(Function<Holes, Doc> shape) {
+        if (shape == null) {
+            throw new IllegalArgumentException(
+                    "can't compile a template w/ a null shape");
+        }
+        Holes holes = new Holes();
+        Doc doc = shape.apply(holes);
+        if (doc == null) {
+            throw new IllegalArgumentException(
+                    "can't compile a template w/ a null shape");
+        }
+        return new DocTemplate(doc, holes);
+    }
+
+    /** The names of the holes, in the order positional values fill them. */
+    public List<String> holes() {
+        return names;
+    }
+
+    /** The template's doc with the holes filled by {@code values}, in order. */
+    public Doc instantiate(Object... values) {
+        return instantiate(docs(values));
+    }
+
+    /** The template's doc with the holes filled by the named values. */
+    public Doc instantiate(Map<String, ?> values) {
+        return instantiate(docs(values));
+    }
+
+    /** Formats the template with its holes filled by {@code values}, in order. */
+    public String render(int width, Object... values) {
+        return render(width, docs(values));
+    }
+
+    /** Formats the template with its holes filled by the named values. */
+    public String render(int width, Map<String, ?> values) {
+        return render(width, docs(values));
+    }
+
+    private String render(int width, Doc[] values) {
+        if (flatText != null && fitsFlat(width, values)) {
+            StringBuilder sb = new StringBuilder(flatText[0]);
+            for (int i = 0; i < flatHoles.length; i++) {
+                flatten(values[flatHoles[i]], null, sb, null, null);
+                sb.append(flatText[i + 1]);
+            }
+            return sb.toString();
+        }
+        return PrettyPrinter.print(instantiate(values), width);
+    }
+
+    // whether the instance fits on a line, which (as the printer puts it in
+    // a group) makes it print flat
+    private boolean fitsFlat(int width, Doc[] values) {
+        long total = fixedWidth;
+        for (int h : flatHoles) {
+            int w = values[h].flatWidth();
+            if (w < 0) {
+                return false;
+            }
+            total = total + w;
+        }
+        return total <= width;
+    }
+
+    private Doc instantiate(Doc[] values) {
+        if (rootHole >= 0) {
+            return values[rootHole];
+        }
+        if (spine.length == 0) {
+            return shape;
+        }
+        Doc[] built = new Doc[spine.length];
+        for (int s = 0; s < spine.length; s++) {
+            int[] r = refs[s];
+            built[s] = switch (spine[s]) {
+                case DocNest n -> new DocNest(n.indent(),
+                        kid(r[0], n.doc(), built, values));
+                case DocGroup g -> new DocGroup(kid(r[0], g.doc(), built, values));
+                case DocCons c -> new DocCons(kid(r[0], c.hd(), built, values),
+                        kid(r[1], c.tl(), built, values));
+                case DocConcat c -> new DocConcat(kids(r, c.docs(), built, values));
+                case DocFill f -> new DocFill(kids(r, f.items(), built, values));
+                default -> throw new IllegalStateException();
+            };
+        }
+        return built[spine.length - 1];
+    }
+
+    private static Doc kid(int ref, Doc fixed, Doc[] built, Doc[] values) {
+        return ref == FIXED ? fixed : ref >= 0 ? built[ref] : values[-1 - ref];
+    }
+
+    private static Doc[] kids(int[] refs, Doc[] fixed, Doc[] built,
+                              Doc[] values) {
+        for (int i = 0; i < fixed.length; i++) {
+            fixed[i] = kid(refs[i], fixed[i], built, values);
+        }
+        return fixed;
+    }
+
+    // a node goes on the spine (after its children) if any of its children
+    // is a hole or on the spine itself
+    private void findSpine(IdentityHashMap<Doc, Integer> holeIds,
+                           ArrayList<Doc> spine, ArrayList<int[]> refs) {
+        IdentityHashMap<Doc, Integer> done = new IdentityHashMap<>();
+        DocWalk.postOrder(shape, new DocWalk.Visitor() {
+            @Override public Doc[] enter(Doc d) {
+                Doc[] kids = DocWalk.children(d);
+                return done.containsKey(d) || kids.length == 0 ? null : kids;
+            }
+
+            @Override public void leave(Doc d, Doc[] kids) {
+                int[] r = new int[kids.length];
+                boolean onSpine = false;
+                for (int i = 0; i < kids.length; i++) {
+                    Integer hole = holeIds.get(kids[i]);
+                    int s = done.getOrDefault(kids[i], FIXED);
+                    r[i] = hole != null ? -1 - hole : s;
+                    onSpine = onSpine || r[i] != FIXED;
+                }
+                if (onSpine) {
+                    done.put(d, spine.size());
+                    spine.add(d);
+                    refs.add(r);
+                } else {
+                    done.put(d, FIXED);
+                }
+            }
+        });
+    }
+
+    // appends d's flat rendering to sb; with holes given, the text is cut
+    // at each one outside the lazy docs (as findSpine doesn't look inside
+    // them either), into text, and the hole's index is added to at
+    private static void flatten(Doc d, IdentityHashMap<Doc, Integer> holes,
+                                StringBuilder sb, List<String> text,
+                                List<Integer> at) {
+        ArrayList<Doc> todo = new ArrayList<>();
+        // the docs on todo from here up came out of a lazy doc
+        int lazyFrom = Integer.MAX_VALUE;
+        todo.add(d);
+        while (!todo.isEmpty()) {
+            Doc doc = todo.remove(todo.size() - 1);
+            if (todo.size() < lazyFrom) {
+                lazyFrom = Integer.MAX_VALUE;
+            }
+            Integer hole = holes == null || lazyFrom != Integer.MAX_VALUE
+                    ? null : holes.get(doc);
+            if (hole != null) {
+                text.add(sb.toString());
+                sb.setLength(0);
+                at.add(hole);
+                continue;
+            }
+            switch (doc) {
+                case DocText t -> sb.append(t.text());
+                case DocBreak b -> sb.append(' ');
+                case DocLazy l -> {
+                    lazyFrom = Math.min(lazyFrom, todo.size());
+                    todo.add(l.expand());
+                }
+                case DocFill f -> {
+                    for (int i = f.size() - 1; i >= 0; i--) {
+                        todo.add(f.get(i));
+                        if (i > 0) {
+                            todo.add(DocBreak.INSTANCE);
+                        }
+                    }
+                }
+                default -> {
+                    Doc[] kids = DocWalk.children(doc);
+                    for (int i = kids.length - 1; i >= 0; i--) {
+                        todo.add(kids[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private Doc[] docs(Object... values) {
+        if (values == null || values.length != names.size()) {
+            throw new IllegalArgumentException("expected " + names.size()
+                    + " values for the holes " + names);
+        }
+        Doc[] result = new Doc[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = doc(names.get(i), values[i]);
+        }
+        return result;
+    }
+
+    private Doc[] docs(Map<String, ?> values) {
+        if (values == null) {
+            throw new IllegalArgumentException(
+                    "can't fill a template's holes w/ null values");
+        }
+        Doc[] result = new Doc[names.size()];
+        for (Map.Entry<String, ?> e : values.entrySet()) {
+            Integer at = positions.get(e.getKey());
+            if (at == null) {
+                throw new IllegalArgumentException(
+                        "no hole named " + e.getKey() + " in " + names);
+            }
+            result[at] = doc(e.getKey(), e.getValue());
+        }
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == null) {
+                throw new IllegalArgumentException(
+                        "no value for the hole " + names.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static Doc doc(String name, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException(
+                    "can't fill the hole " + name + " w/ null");
+        }
+        return value instanceof Doc d ? d : new DocText(value.toString());
+    }
+
+    @Override public String toString() {
+        return "DocTemplate(" + names + "," + shape + ")";
+    }
+}
@@ -0,0 +1,77 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import prettyprint.Docs.DocConcat;
+import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocFill;
+import prettyprint.Docs.DocGroup;
+import prettyprint.Docs.DocNest;
+
+import java.util.ArrayList;
+
+/**
+ * Walks over whole docs, for the tools that rebuild or write them out
+ * ({@link DocInterner}, {@link DocWriter}, {@link DocTemplate} and
+ * {@link DocOptimizer}) or look them over ({@link ParallelRenderer}).
+ */
+final class DocWalk {
+
+    private DocWalk() { }
+
+    /** What a walk does with each doc it gets to. */
+    interface Visitor {
+
+        /**
+         * Called when the walk gets to {@code d}; returns the docs to walk
+         * before leaving it (usually its {@link #children}), or null to go
+         * on without walking into or leaving it.
+         */
+        Doc[] enter(Doc d);
+
+        /** Called once all of {@code kids}, as entered, have been walked. */
+        void leave(Doc d, Doc[] kids);
+    }
+
+    // the docs directly under d, in order; a lazy doc has none, as what it
+    // expands to isn't part of it
+    static Doc[] children(Doc d) {
+        return switch (d) {
+            case DocNest n -> new Doc[] {n.doc()};
+            case DocGroup g -> new Doc[] {g.doc()};
+            case DocCons c -> new Doc[] {c.hd(), c.tl()};
+            case DocConcat c -> c.docs();
+            case DocFill f -> f.items();
+            default -> new Doc[0];
+        };
+    }
+
+    // post order, on an explicit stack so any depth of doc works: a doc is
+    // entered, then the docs it gives are walked, and then it's left. a doc
+    // that's reachable several ways is entered each time
+    static void postOrder(Doc root, Visitor v) {
+        ArrayList<Doc> todo = new ArrayList<>();
+        // for each doc on todo, its kids if it's to be left, or null if
+        // it's to be entered
+        ArrayList<Doc[]> leave = new ArrayList<>();
+        todo.add(root);
+        leave.add(null);
+        while (!todo.isEmpty()) {
+            Doc d = todo.remove(todo.size() - 1);
+            Doc[] kids = leave.remove(leave.size() - 1);
+            if (kids != null) {
+                v.leave(d, kids);
+                continue;
+            }
+            kids = v.enter(d);
+            if (kids == null) {
+                continue;
+            }
+            todo.add(d);
+            leave.add(kids);
+            for (int i = kids.length - 1; i >= 0; i--) {
+                todo.add(kids[i]);
+                leave.add(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import prettyprint.Docs.DocBreak;
+import prettyprint.Docs.DocConcat;
+import prettyprint.Docs.DocCons;
+import prettyprint.Docs.DocFill;
+import prettyprint.Docs.DocGroup;
+import prettyprint.Docs.DocLazy;
+import prettyprint.Docs.DocNest;
+import prettyprint.Docs.DocNil;
+import prettyprint.Docs.DocText;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Writes a doc in a compact binary format that {@link DocReader} reads back,
+ * so a doc that's expensive to build can be built once and then printed, at
+ * any width, by other processes. The format is:
+ * <pre>
+ * header   the magic bytes "SPDC" and a version byte
+ * strings  a count, then each string as its UTF-8 length and bytes
+ * nodes    a count, then each node as a tag byte, its flat width (for
+ *          texts and composites) and its fields; a node's children come
+ *          before it and are referred to by index, and the root is the
+ *          last node
+ * index    the offset of each node in the file, as a 4 byte int
+ * trailer  the offset of the index, as a 4 byte int
+ * </pre>
+ * Counts, lengths, widths and indices are unsigned varints (seven bits to a
+ * byte, least significant first), indents are zigzag encoded, and the high
+ * bit of the tag is set for nodes with a break in them. Texts share a single
+ * table entry per distinct string, and a subtree that occurs more than once
+ * in the doc (as the same object; see {@link DocInterner#intern} for sharing
+ * equal ones) is written once. A {@link DocLazy} is expanded, once, and
+ * written as the doc it expands to.
+ * <p>
+ * The widths written are the ones measured where the doc was built, and
+ * the reader trusts them rather than measuring the texts again, so a doc
+ * reads back the same even if the reading JVM's Unicode tables would give
+ * some of its texts a different width.
+ */
+public final class DocWriter {
+
+    static final byte[] MAGIC = {'S', 'P', 'D', 'C'};
+    static final int VERSION = 2;
+
+    static final int NIL = 0;
+    static final int BREAK = 1;
+    static final int TEXT = 2;
+    static final int TEXT_UTF8 = 3;
+    static final int NEST = 4;
+    static final int GROUP = 5;
+    static final int CONS = 6;
+    static final int CONCAT = 7;
+    static final int FILL = 8;
+    static final int HAS_BREAK = 0x80;
+
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private final Bytes strings = new Bytes();
+    private final IdentityHashMap<Doc, Integer> nodeIds = new IdentityHashMap<>();
+    private final Bytes nodes = new Bytes();
+    // by node index: its offset in the nodes, its flat width and whether
+    // it has a break
+    private int[] offsets = new int[64];
+    private int[] widths = new int[64];
+    private boolean[] breaks = new boolean[64];
+    // the number of nodes written (lazy docs share their expansion's index)
+    private int count = 0;
+
+    private DocWriter() { }
+
+    /** The encoding of {@code doc}. */
+    public static byte[] toBytes(Doc doc) {
+        if (doc == null) {
+            throw new IllegalArgumentException("can't write a null doc");
+        }
+        DocWriter w = new DocWriter();
+        w.addAll(doc);
+        return w.finish();
+    }
+
+    /** Writes the encoding of {@code doc} to {@code out}, leaving it open. */
+    public static void write(Doc doc, OutputStream out) {
+        try {
+            out.write(toBytes(doc));
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Writes the encoding of {@code doc} to {@code file}. */
+    public static void write(Doc doc, Path file) {
+        try {
+            Files.write(file, toBytes(doc));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // writes each doc after its children, and each one only once
+    private void addAll(Doc root) {
+        DocWalk.postOrder(root, new DocWalk.Visitor() {
+            @Override public Doc[] enter(Doc d) {
+                if (nodeIds.containsKey(d)) {
+                    return null;
+                }
+                return d instanceof DocLazy l
+                        ? new Doc[] {l.expand()} : DocWalk.children(d);
+            }
+
+            @Override public void leave(Doc d, Doc[] kids) {
+                if (d instanceof DocLazy) {
+                    // written as what it expanded to
+                    nodeIds.put(d, nodeIds.get(kids[0]));
+                } else if (!nodeIds.containsKey(d)) {
+                    add(d, ids(kids));
+                }
+            }
+        });
+    }
+
+    // writes d, whose children (with the given indices) have all been
+    // written
+    private void add(Doc d, int[] kids) {
+        int id = count;
+        if (id == offsets.length) {
+            offsets = Arrays.copyOf(offsets, id * 2);
+            widths = Arrays.copyOf(widths, id * 2);
+            breaks = Arrays.copyOf(breaks, id * 2);
+        }
+        offsets[id] = nodes.size;
+        int width = d.flatWidth();
+        boolean hasBreak = d.hasBreak();
+        if (width < 0) {
+            // the lazy docs in d have all been expanded (and written) by
+            // now, so its width is known
+            long sum = d instanceof DocFill ? kids.length - 1 : 0;
+            hasBreak = d instanceof DocFill && kids.length > 1;
+            for (int kid : kids) {
+                sum = sum + widths[kid];
+                hasBreak = hasBreak || breaks[kid];
+            }
+            width = (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+        widths[id] = width;
+        breaks[id] = hasBreak;
+        int flags = hasBreak ? HAS_BREAK : 0;
+        switch (d) {
+            case DocNil n -> nodes.put(NIL | flags);
+            case DocBreak b -> nodes.put(BREAK | flags);
+            case DocText t -> {
+                nodes.put((t.utf8() == null ? TEXT : TEXT_UTF8) | flags);
+                nodes.putVarint(width);
+                nodes.putVarint(stringId(t.text()));
+            }
+            case DocNest n -> {
+                nodes.put(NEST | flags);
+                nodes.putVarint(width);
+                nodes.putVarint(n.indent() << 1 ^ n.indent() >> 31);
+            }
+            case DocGroup g -> {
+                nodes.put(GROUP | flags);
+                nodes.putVarint(width);
+            }
+            case DocCons c -> {
+                nodes.put(CONS | flags);
+                nodes.putVarint(width);
+            }
+            case DocConcat c -> {
+                nodes.put(CONCAT | flags);
+                nodes.putVarint(width);
+                nodes.putVarint(kids.length);
+            }
+            case DocFill f -> {
+                nodes.put(FILL | flags);
+                nodes.putVarint(width);
+                nodes.putVarint(kids.length);
+            }
+            case DocLazy l -> throw new IllegalStateException();
+        }
+        for (int kid : kids) {
+            nodes.putVarint(kid);
+        }
+        nodeIds.put(d, id);
+        count = count + 1;
+    }
+
+    private int[] ids(Doc[] docs) {
+        int[] result = new int[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            result[i] = nodeIds.get(docs[i]);
+        }
+        return result;
+    }
+
+    private int stringId(String s) {
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = stringIds.size();
+            stringIds.put(s, id);
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            strings.putVarint(utf8.length);
+            strings.put(utf8);
+        }
+        return id;
+    }
+
+    private byte[] finish() {
+        int n = count;
+        Bytes out = new Bytes();
+        out.put(MAGIC);
+        out.put(VERSION);
+        out.putVarint(stringIds.size());
+        out.put(strings.bytes, strings.size);
+        out.putVarint(n);
+        int base = out.size;
+        out.put(nodes.bytes, nodes.size);
+        int index = out.size;
+        for (int i = 0; i < n; i++) {
+            out.putInt(base + offsets[i]);
+        }
+        out.putInt(index);
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    // a growable byte array
+    private static final class Bytes {
+        byte[] bytes = new byte[256];
+        int size = 0;
+
+        void put(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size] = (byte) b;
+            size = size + 1;
+        }
+
+        void put(byte[] b) {
+            put(b, b.length);
+        }
+
+        void put(byte[] b, int n) {
+            if (size + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + n, size * 2));
+            }
+            System.arraycopy(b, 0, bytes, size, n);
+            size = size + n;
+        }
+
+        void putVarint(int v) {
+            while ((v & ~0x7F) != 0) {
+                put(v & 0x7F | 0x80);
+                v = v >>> 7;
+            }
+            put(v);
+        }
+
+        void putInt(int v) {
+            put(v >>> 24);
+            put(v >>> 16);
+            put(v >>> 8);
+            put(v);
+        }
+    }
+}
@@ -1,5 +1,16 @@
 package prettyprint;
 
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 public interface Docs {
 
     String BRK = ":/:",  JN = ":::";
@@ -7,6 +18,20 @@ public interface Docs {
     sealed interface Doc {
 
         int DEFAULT_WIDTH = 80;
+
+        /**
+         * The width of this doc when printed flat (all breaks rendered as
+         * spaces), saturating at {@link Integer#MAX_VALUE}, or -1 if it can't
+         * be known without expanding a {@link DocLazy} inside it. Composite
+         * docs compute this once, when they're built.
+         */
+        int flatWidth();
+
+        /**
+         * Whether this doc (possibly) contains a break anywhere inside it;
+         * docs containing a {@link DocLazy} are assumed to.
+         */
+        boolean hasBreak();
         /* in DocFactory
         def :::(doc: Document): Document = DocCons(doc, this)
         def :::(doc: String): Document = DocCons(DocText(doc), this)
@@ -15,20 +40,62 @@ public interface Docs {
         */
 
         default String prettyPrint(int width) {
-            return prettyPrint(width, new StringBuilder());
+            return PrettyPrinter.print(this, width);
         }
 
         default String prettyPrint() {
-            return prettyPrint(DEFAULT_WIDTH, new StringBuilder());
+            return PrettyPrinter.print(this, DEFAULT_WIDTH);
         }
 
         // format(width: Int, writer: Writer) -- in the tapl-scala project
         // NOTE: HListDoc in Arend is basically DocCons for us...
         default String prettyPrint(int width, StringBuilder writer) {
-            PrettyPrinter p = new PrettyPrinter(width, writer);
-            p.format(this);
+            PrettyPrinter.print(this, width, writer);
             return writer.toString();
         }
+
+        /**
+         * The lines (without their line breaks) this doc formats to, each
+         * laid out only once it's asked for.
+         */
+        default Iterator<String> lineIterator(int width) {
+            return new LineIterator(this, width);
+        }
+
+        /**
+         * Like {@link #lineIterator}, but as a (sequential) stream; closing
+         * the stream stops any further layout.
+         */
+        default Stream<String> lines(int width) {
+            LineIterator it = new LineIterator(this, width);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                            it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(it::close);
+        }
+
+        /**
+         * Streams this doc, formatted to {@code width}, into {@code out}
+         * without first building the whole output up in memory.
+         */
+        default void render(int width, Appendable out) {
+            new PrettyPrinter(width, out).format(this);
+        }
+
+        /**
+         * Streams this doc, formatted to {@code width} and encoded as UTF-8,
+         * into {@code out}. The channel is left open.
+         */
+        default void render(int width, WritableByteChannel out) {
+            new PrettyPrinter(width, out).format(this);
+        }
+
+        /**
+         * Streams this doc, formatted to {@code width} and encoded as UTF-8,
+         * into {@code out}. The stream is flushed but left open.
+         */
+        default void render(int width, OutputStream out) {
+            new PrettyPrinter(width, out).format(this);
+        }
     }
 
     final class DocNil implements Doc {
@@ -36,6 +103,10 @@ public interface Docs {
 
         private DocNil() { }
 
+        @Override public int flatWidth() { return 0; }
+
+        @Override public boolean hasBreak() { return false; }
+
         @Override public String toString() { return "DocNil"; }
     }
 
@@ -43,27 +114,296 @@ public interface Docs {
         public static final Doc INSTANCE = new DocBreak();
         private DocBreak() { }
 
+        @Override public int flatWidth() { return 1; }
+
+        @Override public boolean hasBreak() { return true; }
+
         @Override public String toString() { return "DocBreak"; }
     }
 
-    record DocNest(int indent, Doc doc) implements Doc {
+    // the composite docs below carry their flat width and break status so
+    // printers can measure a whole subtree without walking it
+
+    record DocNest(int indent, Doc doc, int flatWidth, boolean hasBreak)
+            implements Doc {
+        public DocNest {
+            checkMetadata(flatWidth, hasBreak, doc.flatWidth(), doc.hasBreak());
+        }
+
+        public DocNest(int indent, Doc doc) {
+            this(indent, doc, doc.flatWidth(), doc.hasBreak());
+        }
+
         @Override public String toString() {
             return String.format("DocNest(%d,%s)", indent, doc);
         }
     }
 
-    record DocGroup(Doc doc) implements Doc {
+    record DocGroup(Doc doc, int flatWidth, boolean hasBreak) implements Doc {
+        public DocGroup {
+            checkMetadata(flatWidth, hasBreak, doc.flatWidth(), doc.hasBreak());
+        }
+
+        public DocGroup(Doc doc) {
+            this(doc, doc.flatWidth(), doc.hasBreak());
+        }
+
         @Override public String toString() { return "DocGroup(" + doc + ")"; }
     }
 
-    record DocText(String text) implements Doc {
+    /**
+     * A run of text without line breaks. Its width is the number of columns
+     * it takes up when printed (see {@link TextWidth}) rather than its
+     * length; that's measured once, when the doc is built.
+     */
+    final class DocText implements Doc {
+        private final String text;
+        private final int width;
+        // the text encoded as utf-8, if that was asked for up front
+        private final byte[] utf8;
+
+        public DocText(String text) {
+            this(text, false);
+        }
+
+        DocText(String text, boolean encode) {
+            this(text, -1, encode);
+        }
+
+        // a text whose width was already measured (by whoever wrote it
+        // out), or -1 to measure it here
+        DocText(String text, int width, boolean encode) {
+            if (text == null) {
+                throw new IllegalArgumentException(
+                        "can't construct a text doc w/ null text");
+            }
+            this.text = text;
+            this.width = width < 0 ? TextWidth.of(text) : width;
+            this.utf8 = encode ? text.getBytes(StandardCharsets.UTF_8) : null;
+        }
+
+        public String text() { return text; }
+
+        byte[] utf8() { return utf8; }
+
+        @Override public int flatWidth() { return width; }
+
+        @Override public boolean hasBreak() { return false; }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof DocText t && text.equals(t.text);
+        }
+
+        @Override public int hashCode() { return text.hashCode(); }
+
         @Override public String toString() { return "DocText(" + text + ")";  }
     }
 
-    record DocCons(Doc hd, Doc tl) implements Doc {
+    record DocCons(Doc hd, Doc tl, int flatWidth, boolean hasBreak)
+            implements Doc {
+        public DocCons {
+            checkMetadata(flatWidth, hasBreak,
+                    addWidths(hd.flatWidth(), tl.flatWidth()),
+                    hd.hasBreak() || tl.hasBreak());
+        }
+
+        public DocCons(Doc hd, Doc tl) {
+            this(hd, tl, addWidths(hd.flatWidth(), tl.flatWidth()),
+                    hd.hasBreak() || tl.hasBreak());
+        }
+
         @Override public String toString() {
             return String.format("DocCons(%s,%s)", hd, tl);
         }
     }
-}
 
+    /**
+     * The concatenation of any number of docs; the same as a right nested
+     * chain of {@link DocCons}, but stored (and walked by the printers) as a
+     * single array. The array is copied on the way in and out, so a concat
+     * is as immutable as the other docs.
+     */
+    record DocConcat(Doc[] docs, int flatWidth, boolean hasBreak)
+            implements Doc {
+        public DocConcat {
+            docs = docs.clone();
+            checkMetadata(flatWidth, hasBreak, widthOf(docs), anyBreak(docs));
+        }
+
+        public DocConcat(Doc... docs) {
+            this(docs, widthOf(docs), anyBreak(docs));
+        }
+
+        @Override public Doc[] docs() {
+            return docs.clone();
+        }
+
+        public int size() {
+            return docs.length;
+        }
+
+        public Doc get(int i) {
+            return docs[i];
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof DocConcat c && Arrays.equals(docs, c.docs);
+        }
+
+        @Override public int hashCode() {
+            return Arrays.hashCode(docs);
+        }
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder("DocConcat(");
+            for (int i = 0; i < docs.length; i++) {
+                sb.append(i == 0 ? "" : ",").append(docs[i]);
+            }
+            return sb.append(')').toString();
+        }
+
+        private static int widthOf(Doc[] docs) {
+            int result = 0;
+            for (Doc d : docs) {
+                result = addWidths(result, d.flatWidth());
+            }
+            return result;
+        }
+
+        private static boolean anyBreak(Doc[] docs) {
+            for (Doc d : docs) {
+                if (d.hasBreak()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Items separated by breaks, where each break is decided on its own: it's
+     * printed as a space if the item after it fits (flat) on the rest of the
+     * line, and as a line break otherwise; the item is then printed flat, or
+     * in the fill's mode. So a fill wraps like a paragraph, as many items to
+     * a line as fit, and deciding each break only takes measuring the next
+     * item (and, for the last one, what follows the fill up to its next
+     * break). A fill inside a flat group is flat.
+     * <p>
+     * This is the same layout as giving each break and the item after it a
+     * group of their own, except that a group would also be measured along
+     * with everything after it up to the next line break, i.e. all the
+     * items after it, since their breaks may not be taken.
+     */
+    record DocFill(Doc[] items, int flatWidth, boolean hasBreak)
+            implements Doc {
+        public DocFill {
+            items = items.clone();
+            checkMetadata(flatWidth, hasBreak, widthOf(items),
+                    items.length > 1 || DocConcat.anyBreak(items));
+        }
+
+        public DocFill(Doc... items) {
+            this(items, widthOf(items),
+                    items.length > 1 || DocConcat.anyBreak(items));
+        }
+
+        @Override public Doc[] items() {
+            return items.clone();
+        }
+
+        public int size() {
+            return items.length;
+        }
+
+        public Doc get(int i) {
+            return items[i];
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof DocFill f && Arrays.equals(items, f.items);
+        }
+
+        @Override public int hashCode() {
+            return Arrays.hashCode(items);
+        }
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder("DocFill(");
+            for (int i = 0; i < items.length; i++) {
+                sb.append(i == 0 ? "" : ",").append(items[i]);
+            }
+            return sb.append(')').toString();
+        }
+
+        // the items, plus a space for each break between them
+        private static int widthOf(Doc[] items) {
+            return addWidths(DocConcat.widthOf(items),
+                    Math.max(items.length - 1, 0));
+        }
+    }
+
+    /**
+     * A doc that is only produced when a printer reaches it, so very large
+     * docs never have to exist in memory all at once: once the expanded doc
+     * has been printed, it can be garbage collected.
+     * <p>
+     * <b>Note:</b> the supplier isn't memoized (that would keep the expanded
+     * doc reachable); it is called every time the doc is visited, which can
+     * be more than once per print while groups are measured, so it should
+     * always produce the same doc.
+     * <p>
+     * If the flat width and break status of the doc it expands to are known
+     * up front (as they are for a doc read back by {@link DocReader}), they
+     * can be given, and the printers then measure the lazy doc without
+     * expanding it; otherwise its width is -1.
+     */
+    record DocLazy(Supplier<Doc> supplier, int flatWidth, boolean hasBreak)
+            implements Doc {
+        public DocLazy {
+            if (supplier == null) {
+                throw new IllegalArgumentException(
+                        "can't construct a lazy doc w/ null supplier");
+            }
+            if (flatWidth < 0 && (flatWidth != -1 || !hasBreak)) {
+                throw new IllegalArgumentException(
+                        "flat width/break metadata doesn't match the doc");
+            }
+        }
+
+        public DocLazy(Supplier<Doc> supplier) {
+            this(supplier, -1, true);
+        }
+
+        public Doc expand() {
+            Doc result = supplier.get();
+            if (result == null) {
+                throw new IllegalStateException("lazy doc expanded to null");
+            }
+            if (flatWidth >= 0 && (result.flatWidth() != flatWidth
+                    || result.hasBreak() != hasBreak)) {
+                throw new IllegalStateException(
+                        "lazy doc expanded to a doc w/ different metadata");
+            }
+            return result;
+        }
+
+        @Override public String toString() { return "DocLazy(...)"; }
+    }
+
+    private static int addWidths(int a, int b) {
+        if (a < 0 || b < 0) {
+            return -1;
+        }
+        int sum = a + b;
+        return sum < 0 ? Integer.MAX_VALUE : sum;
+    }
+
+    private static void checkMetadata(int flatWidth, boolean hasBreak,
+                                      int expectedWidth,
+                                      boolean expectedBreak) {
+        if (flatWidth != expectedWidth || hasBreak != expectedBreak) {
+            throw new IllegalArgumentException(
+                    "flat width/break metadata doesn't match the doc");
+        }
+    }
+}
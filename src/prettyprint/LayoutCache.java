@@ -0,0 +1,154 @@
+package prettyprint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the rendered output of the groups a {@link PrettyPrinter} lays
+ * out, so that re-rendering a doc after a small edit (that shares all of its
+ * unchanged subtrees with the previous version) only lays out the groups
+ * that actually changed; the rest are replayed from the cache.
+ * <p>
+ * Groups are looked up by identity, together with everything their layout
+ * depends on: the indent and column they start at, the page width, whether
+ * they're rendered flat, and how much of the rest of the line (up to the
+ * next break after the group) they have to leave room for. Only groups that
+ * are wide enough to be worth it are cached, and never ones containing a
+ * {@link Docs.DocLazy} of unknown width.
+ * <p>
+ * The cache is bounded by the total number of characters it holds; least
+ * recently used entries are dropped first. Cached groups stay reachable
+ * until they're dropped. A cache is thread safe, and may be shared by
+ * printers of different widths, running on different threads.
+ */
+public final class LayoutCache {
+
+    // laying out a group narrower than this is about as cheap as looking it
+    // up and replaying it
+    static final int MIN_FLAT_WIDTH = 64;
+
+    private final long maxChars;
+    private long chars = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private final LinkedHashMap<Key, Layout> fragments =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    public LayoutCache(long maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException(
+                    "can't construct a layout cache w/ a negative size");
+        }
+        this.maxChars = maxChars;
+    }
+
+    /** The number of groups currently cached. */
+    public synchronized int size() {
+        return fragments.size();
+    }
+
+    /** The total length of the cached output. */
+    public synchronized long chars() {
+        return chars;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        fragments.clear();
+        chars = 0;
+    }
+
+    // whether a group's layout is worth caching; a group's output is never
+    // shorter than its flat width, so wider ones wouldn't fit anyway
+    boolean accepts(Docs.DocGroup d) {
+        return d.flatWidth() >= MIN_FLAT_WIDTH && d.flatWidth() <= maxChars;
+    }
+
+    synchronized Layout get(Key key) {
+        Layout result = fragments.get(key);
+        if (result == null) {
+            misses = misses + 1;
+        } else {
+            hits = hits + 1;
+        }
+        return result;
+    }
+
+    synchronized void put(Key key, Layout layout) {
+        if (layout.text().length() > maxChars) {
+            return;
+        }
+        Layout old = fragments.put(key, layout);
+        chars = chars + layout.text().length()
+                - (old == null ? 0 : old.text().length());
+        Iterator<Map.Entry<Key, Layout>> it = fragments.entrySet().iterator();
+        while (chars > maxChars) {
+            chars = chars - it.next().getValue().text().length();
+            it.remove();
+        }
+    }
+
+    // a group's output, and how far it moved the column: that's kept rather
+    // than measured from the text on replay, as display widths don't add up
+    // across a grapheme cluster split between docs
+    record Layout(String text, int advance) { }
+
+    // the key of a group printed flat, which is the same wherever it appears
+    static Key flatKey(Docs.DocGroup doc) {
+        return new Key(doc, true, 0, 0, 0, 0);
+    }
+
+    // run is the flat width of what follows the group up to the next break,
+    // capped at width + 1 (past that, nothing fits whatever the run is)
+    static Key key(Docs.DocGroup doc, int width, int indent, int column,
+                   int run) {
+        return new Key(doc, false, width, indent, column, run);
+    }
+
+    // compares docs by identity: equal but distinct docs are rare, and
+    // comparing (and hashing) them structurally would take as long as
+    // laying them out
+    static final class Key {
+
+        private final Docs.DocGroup doc;
+        private final boolean flat;
+        private final int width;
+        private final int indent;
+        private final int column;
+        private final int run;
+
+        private Key(Docs.DocGroup doc, boolean flat, int width, int indent,
+                    int column, int run) {
+            this.doc = doc;
+            this.flat = flat;
+            this.width = width;
+            this.indent = indent;
+            this.column = column;
+            this.run = run;
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Key k && doc == k.doc && flat == k.flat
+                    && width == k.width && indent == k.indent
+                    && column == k.column && run == k.run;
+        }
+
+        @Override public int hashCode() {
+            int h = System.identityHashCode(doc);
+            h = 31 * h + Boolean.hashCode(flat);
+            h = 31 * h + width;
+            h = 31 * h + indent;
+            h = 31 * h + column;
+            return 31 * h + run;
+        }
+    }
+}
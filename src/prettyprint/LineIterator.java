@@ -0,0 +1,45 @@
+package prettyprint;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the lines a doc formats to (without their line breaks),
+ * laying out the doc only as far as it takes to finish the next line each
+ * time one is asked for. Closing the iterator drops the layout state, so
+ * nothing after that point is ever laid out.
+ */
+final class LineIterator implements Iterator<String>, AutoCloseable {
+
+    private final Sink.LineSink sink = new Sink.LineSink();
+    private PrettyPrinter printer;
+
+    LineIterator(Docs.Doc doc, int width) {
+        printer = new PrettyPrinter(width, sink);
+        printer.startLines(doc);
+    }
+
+    @Override public boolean hasNext() {
+        while (sink.isEmpty() && printer != null) {
+            if (!printer.formatLine()) {
+                sink.finish();
+                printer = null;
+            }
+        }
+        return !sink.isEmpty();
+    }
+
+    @Override public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return sink.poll();
+    }
+
+    @Override public void close() {
+        printer = null;
+        while (!sink.isEmpty()) {
+            sink.poll();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package prettyprint;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the lines a doc formats to, one item per line (without the line
+ * break), as they're laid out. Layout only advances as far as subscribers
+ * have asked for: each subscriber gets its own printer, which lays out the
+ * doc a line at a time, on the given executor, whenever the subscriber has
+ * outstanding demand; so neither the whole output nor a thread waiting on
+ * a slow subscriber is ever held on to.
+ * <p>
+ * Each subscriber gets all of the lines, from the first. If laying out the
+ * doc throws (e.g. a {@link Docs.DocLazy} does), the subscriber's
+ * {@code onError} is called with what it threw.
+ */
+public final class LinePublisher implements Flow.Publisher<CharSequence> {
+
+    private final Docs.Doc doc;
+    private final int width;
+    private final Executor executor;
+
+    public LinePublisher(Docs.Doc doc, int width) {
+        this(doc, width, ForkJoinPool.commonPool());
+    }
+
+    public LinePublisher(Docs.Doc doc, int width, Executor executor) {
+        if (doc == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a publisher w/ a null doc");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a publisher w/ a null executor");
+        }
+        this.doc = doc;
+        this.width = width;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharSequence> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+        LineSubscription s = new LineSubscription(subscriber);
+        subscriber.onSubscribe(s);
+    }
+
+    // signals are delivered by a drain loop that only ever runs on one
+    // thread at a time: whoever bumps wip from 0 schedules it, and it keeps
+    // going until it has caught up with every bump since. once cancelled
+    // (or done), the loop lets go of the subscriber and the layout state
+    private final class LineSubscription implements Flow.Subscription, Runnable {
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile Throwable badRequest = null;
+
+        // only touched by the drain loop
+        private Flow.Subscriber<? super CharSequence> subscriber;
+        private Sink.LineSink sink = new Sink.LineSink();
+        private PrettyPrinter printer = null;
+        private boolean laidOut = false;
+
+        private LineSubscription(Flow.Subscriber<? super CharSequence> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException(
+                        "non-positive request: " + n);
+            } else {
+                demand.getAndAccumulate(n, (a, b) -> a + b < 0
+                        ? Long.MAX_VALUE : a + b);
+            }
+            schedule();
+        }
+
+        @Override public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            try {
+                emit();
+            } finally {
+                if (cancelled) {
+                    subscriber = null;
+                    sink = null;
+                    printer = null;
+                }
+            }
+        }
+
+        private void emit() {
+            if (cancelled) {
+                return;
+            }
+            if (badRequest != null) {
+                // see rule 3.9 of the reactive streams spec
+                cancelled = true;
+                subscriber.onError(badRequest);
+                return;
+            }
+            try {
+                while (!cancelled) {
+                    if (sink.isEmpty()) {
+                        if (laidOut) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                        if (demand.get() == 0) {
+                            return;
+                        }
+                        layOutLine();
+                    } else if (demand.get() > 0) {
+                        demand.decrementAndGet();
+                        subscriber.onNext(sink.poll());
+                    } else {
+                        return;
+                    }
+                }
+            } catch (Throwable t) {
+                if (!cancelled) {
+                    cancelled = true;
+                    subscriber.onError(t);
+                }
+            }
+        }
+
+        private void layOutLine() {
+            if (printer == null) {
+                printer = new PrettyPrinter(width, sink);
+                printer.startLines(doc);
+            }
+            if (!printer.formatLine()) {
+                sink.finish();
+                laidOut = true;
+                printer = null;
+            }
+        }
+    }
+}
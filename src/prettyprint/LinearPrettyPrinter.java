@@ -0,0 +1,348 @@
+package prettyprint;
+
+import java.util.Arrays;
+
+/**
+ * An alternative to {@link PrettyPrinter} that produces exactly the same
+ * layout, but decides each group in amortized constant time (à la Oppen)
+ * rather than re-scanning the group and its continuation every time one is
+ * reached.
+ * <p>
+ * The doc is flattened into a stream of text, line and group-open events.
+ * Events are buffered only while some group is still undecided, and a group
+ * stays undecided only as long as its flat rendering (plus the text that
+ * follows it, up to the next line break in an enclosing group) still fits on
+ * the current line, so the buffer never holds much more than a page width of
+ * text. Each event is buffered and emitted at most once, so total work is
+ * linear in the size of the doc regardless of how deeply groups nest.
+ */
+public final class LinearPrettyPrinter {
+
+    private static final int UNDECIDED = 0, FLAT = 1, BROKEN = 2;
+    private static final int TEXT = 0, LINE = 1, OPEN = 2;
+
+    // marks the close of the group standing in for a break in a fill (and
+    // the item after it) that isn't the last one
+    private static final Docs.DocText FILL_CLOSE = new Docs.DocText("");
+
+    private final Sink writer;
+    private final int width;
+
+    public LinearPrettyPrinter(int width, StringBuilder writer) {
+        this(width, Sink.of(writer));
+    }
+
+    public LinearPrettyPrinter(int width, Appendable out) {
+        this(width, Sink.of(out, Sink.DEFAULT_BUFFER_SIZE, false));
+    }
+
+    LinearPrettyPrinter(int width, Sink writer) {
+        this.writer = writer;
+        this.width = width;
+    }
+
+    public void format(Docs.Doc hd) {
+        new Layout().run(new Docs.DocGroup(hd));
+        writer.flush();
+    }
+
+    private static final class Group {
+        final Group parent;
+        final long start;      // flat position where the group opens
+        long end = -1;         // flat position of its terminating break
+        int mode = UNDECIDED;
+
+        // undecided groups closed inside this (still open) group that are
+        // waiting for the next line break directly in it to terminate them
+        Group awaitingHead, awaitingTail;
+        Group nextAwaiting;
+
+        Group(Group parent, long start) {
+            this.parent = parent;
+            this.start = start;
+        }
+    }
+
+    // per-format state; a fresh layout is used for every doc
+    private final class Layout {
+
+        // traversal stack; a null doc marks the close of a group, and a
+        // concat's position is the index of its next doc
+        private Docs.Doc[] docs = new Docs.Doc[32];
+        private int[] indents = new int[32];
+        private int[] positions = new int[32];
+        private int sp = 0;
+
+        // ring buffer of events not yet written out
+        private int[] kinds = new int[64];
+        private Object[] refs = new Object[64];
+        private int[] nums = new int[64];
+        private int head = 0, size = 0;
+
+        private Group current = null;   // innermost open group
+        private Group front = null;     // earliest undecided group
+        private long pos = 0;           // total flat width seen so far
+        private int col = 0;            // column of the emitted output
+        private boolean eof = false;
+
+        void run(Docs.Doc root) {
+            push(0, root);
+            while (sp > 0) {
+                sp = sp - 1;
+                Docs.Doc doc = docs[sp];
+                int i = indents[sp];
+                int j = positions[sp];
+                docs[sp] = null;
+                switch (doc) {
+                    case null -> close();
+                    case Docs.DocNil n -> { }
+                    case Docs.DocCons d -> {
+                        push(i, d.tl());
+                        push(i, d.hd());
+                    }
+                    case Docs.DocConcat d -> {
+                        if (j + 1 < d.size()) {
+                            push(i, d, j + 1);
+                        }
+                        if (j < d.size()) {
+                            push(i, d.get(j));
+                        }
+                    }
+                    case Docs.DocText d && d == FILL_CLOSE -> closeFill();
+                    case Docs.DocText d -> text(d);
+                    case Docs.DocNest d -> push(i + d.indent(), d.doc());
+                    case Docs.DocBreak d -> line(i);
+                    case Docs.DocLazy d -> push(i, d.expand());
+                    case Docs.DocFill d && j == 0 -> {
+                        if (d.size() > 1) {
+                            push(i, d, 1);
+                        }
+                        if (d.size() > 0) {
+                            push(i, d.get(0));
+                        }
+                    }
+                    // each break in a fill and the item after it are laid
+                    // out as a group, which (unless it's the last) ends
+                    // with the item, since the next break can still be taken
+                    case Docs.DocFill d -> {
+                        boolean last = j + 1 == d.size();
+                        if (!last) {
+                            push(i, d, j + 1);
+                        }
+                        push(i, last ? null : FILL_CLOSE);
+                        push(i, d.get(j));
+                        open();
+                        line(i);
+                    }
+                    // a group without breaks prints the same either way
+                    case Docs.DocGroup d && !d.hasBreak() -> push(i, d.doc());
+                    case Docs.DocGroup d -> {
+                        push(i, null);
+                        push(i, d.doc());
+                        open();
+                    }
+                }
+            }
+            eof = true;
+            settle();
+        }
+
+        private void push(int i, Docs.Doc doc) {
+            push(i, doc, 0);
+        }
+
+        private void push(int i, Docs.Doc doc, int j) {
+            if (sp == docs.length) {
+                docs = Arrays.copyOf(docs, sp * 2);
+                indents = Arrays.copyOf(indents, sp * 2);
+                positions = Arrays.copyOf(positions, sp * 2);
+            }
+            docs[sp] = doc;
+            indents[sp] = i;
+            positions[sp] = j;
+            sp = sp + 1;
+        }
+
+        private void open() {
+            Group g = new Group(current, pos);
+            current = g;
+            if (front == null) {
+                if (!decide(g)) {
+                    front = g;
+                    enqueue(OPEN, g, 0);
+                }
+            } else {
+                enqueue(OPEN, g, 0);
+            }
+        }
+
+        private void close() {
+            Group g = current;
+            current = g.parent;
+            if (current == null) {
+                return;
+            }
+            // anything still waiting inside g now waits on g's parent, as
+            // does g itself if it hasn't been decided yet
+            if (g.awaitingHead != null) {
+                await(g.awaitingHead, g.awaitingTail);
+                g.awaitingHead = g.awaitingTail = null;
+            }
+            if (g.mode == UNDECIDED && g.end < 0) {
+                await(g, g);
+            }
+        }
+
+        private void closeFill() {
+            if (current.mode == UNDECIDED) {
+                current.end = pos;
+            }
+            close();
+            settle();
+        }
+
+        private void await(Group first, Group last) {
+            Group owner = current;
+            while (owner.awaitingHead != null
+                    && owner.awaitingHead.mode != UNDECIDED) {
+                owner.awaitingHead = owner.awaitingHead.nextAwaiting;
+            }
+            if (owner.awaitingHead == null) {
+                owner.awaitingHead = first;
+            } else {
+                owner.awaitingTail.nextAwaiting = first;
+            }
+            owner.awaitingTail = last;
+            last.nextAwaiting = null;
+        }
+
+        private void text(Docs.DocText d) {
+            pos = pos + d.flatWidth();
+            if (front == null) {
+                write(d);
+            } else {
+                enqueue(TEXT, d, 0);
+                settle();
+            }
+        }
+
+        private void line(int i) {
+            Group g = current;
+            // a line break directly in g ends the lookahead for every group
+            // that closed inside g since the last one
+            for (Group w = g.awaitingHead; w != null; w = w.nextAwaiting) {
+                if (w.mode == UNDECIDED) {
+                    w.end = pos;
+                }
+            }
+            g.awaitingHead = g.awaitingTail = null;
+            settle();
+            pos = pos + 1;
+            if (front == null) {
+                emitLine(g, i);
+            } else {
+                enqueue(LINE, g, i);
+                settle();
+            }
+        }
+
+        // tries to decide g, assuming everything before it has been written
+        private boolean decide(Group g) {
+            if (g.parent != null && g.parent.mode == FLAT) {
+                g.mode = FLAT;
+                return true;
+            }
+            long end = g.end >= 0 ? g.end : eof ? pos : -1;
+            if (end >= 0) {
+                g.mode = col + (end - g.start) <= width ? FLAT : BROKEN;
+                return true;
+            }
+            if (col + (pos - g.start) > width) {
+                g.mode = BROKEN;
+                return true;
+            }
+            return false;
+        }
+
+        private void settle() {
+            while (front != null && decide(front)) {
+                advance();
+            }
+        }
+
+        // writes out buffered events following the (now decided) front group
+        // up to the next group that can't be decided yet
+        private void advance() {
+            dequeue();
+            front = null;
+            while (size > 0) {
+                int kind = kinds[head];
+                Object ref = refs[head];
+                int n = nums[head];
+                if (kind == OPEN) {
+                    Group g = (Group) ref;
+                    if (g.mode == UNDECIDED && !decide(g)) {
+                        front = g;
+                        return;
+                    }
+                    dequeue();
+                } else if (kind == TEXT) {
+                    dequeue();
+                    write((Docs.DocText) ref);
+                } else {
+                    dequeue();
+                    emitLine((Group) ref, n);
+                }
+            }
+        }
+
+        private void emitLine(Group g, int i) {
+            if (g.mode == FLAT) {
+                writer.text(" ");
+                col = col + 1;
+            } else {
+                writer.newline(i);
+                col = i;
+            }
+        }
+
+        private void write(Docs.DocText d) {
+            writer.text(d);
+            col = col + d.flatWidth();
+        }
+
+        private void enqueue(int kind, Object ref, int n) {
+            if (size == kinds.length) {
+                grow();
+            }
+            int at = (head + size) & (kinds.length - 1);
+            kinds[at] = kind;
+            refs[at] = ref;
+            nums[at] = n;
+            size = size + 1;
+        }
+
+        private void dequeue() {
+            refs[head] = null;
+            head = (head + 1) & (kinds.length - 1);
+            size = size - 1;
+        }
+
+        private void grow() {
+            int n = kinds.length;
+            int[] k = new int[n * 2];
+            Object[] r = new Object[n * 2];
+            int[] m = new int[n * 2];
+            for (int j = 0; j < size; j++) {
+                int at = (head + j) & (n - 1);
+                k[j] = kinds[at];
+                r[j] = refs[at];
+                m[j] = nums[at];
+            }
+            kinds = k;
+            refs = r;
+            nums = m;
+            head = 0;
+        }
+    }
+}
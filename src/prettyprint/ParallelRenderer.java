@@ -0,0 +1,228 @@
+package prettyprint;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Renders large docs using several threads, with the same output as
+ * {@link PrettyPrinter}.
+ * <p>
+ * Once a group is known to break, the breaks directly inside it are printed
+ * as newlines, and what's between two such breaks is laid out independently
+ * of anything else: the column it starts at is known (its indent) and no
+ * fits check looks past the next break. A group is known to break, without
+ * laying out anything before it, if it's wider than the page; so the
+ * renderer walks down through the root and any such groups, cuts the doc up
+ * into chunks at their breaks, lays out the chunks on a {@link ForkJoinPool}
+ * and writes the results in order.
+ * <p>
+ * Docs whose root group fits on a line are just printed on the calling
+ * thread, as are chunks that have no breaks to be cut at. Only a bounded
+ * number of chunks is in flight at any time, so the output is streamed much
+ * like {@link PrettyPrinter} does.
+ * <p>
+ * A group wider than the page is only known to break if it starts at a
+ * column of at least 0, which holds as long as no line starts left of the
+ * margin. Docs with a negative nest around a break (where one could) are
+ * printed on the calling thread too.
+ */
+public final class ParallelRenderer {
+
+    // the (flat) width of the docs to put in a chunk before cutting it at
+    // the next break; enough to outweigh the cost of scheduling it
+    static final int DEFAULT_CHUNK_WIDTH = 1 << 16;
+
+    private final int width;
+    private final ForkJoinPool pool;
+    private final int chunkWidth;
+
+    public ParallelRenderer(int width) {
+        this(width, ForkJoinPool.commonPool());
+    }
+
+    public ParallelRenderer(int width, ForkJoinPool pool) {
+        this(width, pool, DEFAULT_CHUNK_WIDTH);
+    }
+
+    ParallelRenderer(int width, ForkJoinPool pool, int chunkWidth) {
+        if (pool == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a parallel renderer w/ a null pool");
+        }
+        this.width = width;
+        this.pool = pool;
+        this.chunkWidth = chunkWidth;
+    }
+
+    public String prettyPrint(Docs.Doc doc) {
+        StringBuilder sb = new StringBuilder();
+        render(doc, sb);
+        return sb.toString();
+    }
+
+    public void render(Docs.Doc doc, Appendable out) {
+        Docs.Doc root = doc instanceof Docs.DocGroup
+                ? doc : new Docs.DocGroup(doc);
+        if (!tooWide(root) || hasNegativeNest(root)) {
+            new PrettyPrinter(width, out).format(doc);
+            return;
+        }
+        Sink sink = Sink.of(out, Sink.DEFAULT_BUFFER_SIZE, false);
+        Splitter splitter = new Splitter(root);
+        int maxInFlight = 2 * pool.getParallelism();
+        ArrayDeque<ForkJoinTask<String>> inFlight = new ArrayDeque<>();
+        try {
+            Chunk chunk = splitter.next();
+            while (chunk != null) {
+                Chunk c = chunk;
+                inFlight.add(pool.submit(c::render));
+                if (inFlight.size() >= maxInFlight) {
+                    sink.text(inFlight.remove().join());
+                }
+                chunk = splitter.next();
+            }
+            while (!inFlight.isEmpty()) {
+                sink.text(inFlight.remove().join());
+            }
+        } finally {
+            inFlight.forEach(t -> t.cancel(true));
+        }
+        sink.flush();
+    }
+
+    // whether group d breaks wherever it starts: it needs more than a whole
+    // line to itself. that takes the column it starts at to be at least 0
+    // (see the class doc)
+    private boolean tooWide(Docs.Doc d) {
+        return d.flatWidth() >= 0 && d.flatWidth() > width;
+    }
+
+    // whether a line of doc may start left of the margin: a nest with a
+    // negative indent has a break in it. the whole doc is looked at, as the
+    // rest of a line broken inside the nest can hold groups outside of it
+    private static boolean hasNegativeNest(Docs.Doc doc) {
+        boolean[] found = {false};
+        DocWalk.postOrder(doc, new DocWalk.Visitor() {
+            @Override public Docs.Doc[] enter(Docs.Doc d) {
+                // a doc without breaks prints on one line wherever it is
+                if (found[0] || !d.hasBreak()) {
+                    return null;
+                }
+                if (d instanceof Docs.DocNest n && n.indent() < 0) {
+                    found[0] = true;
+                    return null;
+                }
+                return d instanceof Docs.DocLazy l
+                        ? new Docs.Doc[] {l.expand()} : DocWalk.children(d);
+            }
+
+            @Override public void leave(Docs.Doc d, Docs.Doc[] kids) { }
+        });
+        return found[0];
+    }
+
+    // a run of consecutive top-level docs (see PrettyPrinter.format)
+    // starting at a line break (or the start of the doc) and ending just
+    // before one (or at the end)
+    private final class Chunk {
+
+        private int[] indents = new int[16];
+        private Docs.Doc[] items = new Docs.Doc[16];
+        private int n = 0;
+        // roughly how much work laying out the chunk is
+        private long weight = 0;
+
+        private void add(int i, Docs.Doc doc) {
+            if (n == items.length) {
+                indents = Arrays.copyOf(indents, n * 2);
+                items = Arrays.copyOf(items, n * 2);
+            }
+            indents[n] = i;
+            items[n] = doc;
+            n = n + 1;
+            weight = weight + Math.max(1, doc.flatWidth());
+        }
+
+        private String render() {
+            StringBuilder sb = new StringBuilder();
+            new PrettyPrinter(width, sb).format(indents, items, n);
+            return sb.toString();
+        }
+    }
+
+    // walks the doc like PrettyPrinter.fmt_ would, down through the docs in
+    // break mode that contain breaks, stopping at the groups (and other docs)
+    // that have to be laid out for real
+    private final class Splitter {
+
+        private int[] indents = new int[64];
+        private Docs.Doc[] docs = new Docs.Doc[64];
+        private int[] positions = new int[64];
+        private int sp = 0;
+
+        private Splitter(Docs.Doc root) {
+            push(0, root);
+        }
+
+        private Chunk next() {
+            if (sp == 0) {
+                return null;
+            }
+            Chunk chunk = new Chunk();
+            while (sp > 0) {
+                sp = sp - 1;
+                int i = indents[sp];
+                Docs.Doc doc = docs[sp];
+                int j = positions[sp];
+                docs[sp] = null;
+                switch (doc) {
+                    case Docs.DocCons d && d.hasBreak() -> {
+                        push(i, d.tl());
+                        push(i, d.hd());
+                    }
+                    case Docs.DocConcat d && d.hasBreak() -> {
+                        if (j + 1 < d.size()) {
+                            push(i, d, j + 1);
+                        }
+                        if (j < d.size()) {
+                            push(i, d.get(j));
+                        }
+                    }
+                    case Docs.DocNest d && d.hasBreak() ->
+                            push(i + d.indent(), d.doc());
+                    case Docs.DocLazy d -> push(i, d.expand());
+                    case Docs.DocGroup d && tooWide(d) -> {
+                        // fits checks that get to the group still have to
+                        // fail there
+                        chunk.add(i, PrettyPrinter.OVERFULL);
+                        push(i, d.doc());
+                    }
+                    case Docs.DocBreak d && chunk.weight >= chunkWidth -> {
+                        push(i, d);
+                        return chunk;
+                    }
+                    default -> chunk.add(i, doc);
+                }
+            }
+            return chunk;
+        }
+
+        private void push(int i, Docs.Doc doc) {
+            push(i, doc, 0);
+        }
+
+        private void push(int i, Docs.Doc doc, int j) {
+            if (sp == docs.length) {
+                indents = Arrays.copyOf(indents, sp * 2);
+                docs = Arrays.copyOf(docs, sp * 2);
+                positions = Arrays.copyOf(positions, sp * 2);
+            }
+            indents[sp] = i;
+            docs[sp] = doc;
+            positions[sp] = j;
+            sp = sp + 1;
+        }
+    }
+}
@@ -1,113 +1,777 @@
 package prettyprint;
 
-import prettyprint.immutableadts.EmptyList;
-import prettyprint.immutableadts.IList;
-import prettyprint.immutableadts.NonEmptyList;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * Lays out docs (which are immutable, so any number of printers may lay out
+ * the same doc at once) to a given width. A printer itself keeps its work
+ * stacks between format calls and isn't thread safe; it can be pointed at
+ * a new output with {@link #reset}, and {@link #print} reuses one printer
+ * (and output buffer) per thread.
+ */
 public final class PrettyPrinter {
 
     public static final boolean DEBUG = false;
 
-    private final StringBuilder writer;
-    private final int width;
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    // past these sizes, the stacks and buffers a printer grew for some big
+    // doc aren't kept around for reuse
+    private static final int MAX_RETAINED_STACK_SIZE = 1 << 12;
+    private static final int MAX_RETAINED_CHARS = 1 << 16;
+
+    // a printer and an output buffer kept by each thread for print
+    private static final class Reusable {
+        private final StringBuilder buffer = new StringBuilder();
+        private final Sink bufferSink = Sink.of(buffer);
+        private final PrettyPrinter printer = new PrettyPrinter(0, bufferSink);
+    }
+
+    private static final ThreadLocal<Reusable> LOCAL =
+            ThreadLocal.withInitial(Reusable::new);
+
+    private Sink writer;
+    private int width;
+    // set while a format call is running (a lazy doc might try to print
+    // something itself)
+    private boolean busy = false;
+
+    // work stack (see fmt_)
+    private int[] indents = new int[INITIAL_STACK_SIZE];
+    private boolean[] modes = new boolean[INITIAL_STACK_SIZE];
+    private Docs.Doc[] docs = new Docs.Doc[INITIAL_STACK_SIZE];
+    private int[] positions = new int[INITIAL_STACK_SIZE];
+    private int sp = 0;
+
+    // scratch stack for the nodes fits_ expands itself
+    private boolean[] fitModes = new boolean[INITIAL_STACK_SIZE];
+    private Docs.Doc[] fitDocs = new Docs.Doc[INITIAL_STACK_SIZE];
+    private int[] fitPositions = new int[INITIAL_STACK_SIZE];
+
+    // pushed below the content of a group whose output is being recorded
+    // for the layout cache; marks where the group ends
+    private static final Docs.DocText GROUP_END = new Docs.DocText("");
+
+    // prints nothing, but never fits; stands in for a group that's too wide
+    // to fit on any line, where its content is laid out without it (see
+    // ParallelRenderer)
+    static final Docs.DocText OVERFULL = new Docs.DocText("");
+
+    private LayoutCache cache = null;
+
+    // only the lines [fromLine, toLine) are written out (see Viewport), and
+    // formatting stops (or pauses, see formatLine) once it gets to stopLine;
+    // every checkpointInterval lines, the state of the printer is saved to
+    // checkpoints, if it's set
+    private long line = 0;
+    private long fromLine = 0;
+    private long toLine = Long.MAX_VALUE;
+    private long stopLine = Long.MAX_VALUE;
+    // the column a paused format call got to
+    private int column = 0;
+    private ArrayList<Checkpoint> checkpoints = null;
+    private int checkpointInterval = 0;
+
+    private RenderListener listener = null;
+    // the counts reported to the listener (see RenderMetrics)
+    private long nodes = 0;
+    private long fitsCalls = 0;
+    private long fitsSteps = 0;
+    private long groupsBroken = 0;
+    private long groupsFlat = 0;
+    private int maxStackDepth = 0;
+    private long chars = 0;
+    // the output of the groups being recorded (outermost first), each of
+    // which started at the given offset into capture
+    private final ArrayList<LayoutCache.Key> recording = new ArrayList<>();
+    private final ArrayList<Integer> recordingStarts = new ArrayList<>();
+    // and the column each one started at
+    private final ArrayList<Integer> recordingColumns = new ArrayList<>();
+    private final StringBuilder capture = new StringBuilder();
 
     public PrettyPrinter(int width, StringBuilder writer) {
+        this(width, Sink.of(writer));
+    }
+
+    /**
+     * Creates a printer that streams its output to {@code out} through a
+     * bounded internal buffer, so the rendered text never has to be held in
+     * memory all at once.
+     */
+    public PrettyPrinter(int width, Appendable out) {
+        this(width, out, false);
+    }
+
+    /**
+     * Like {@link #PrettyPrinter(int, Appendable)}, but if {@code autoFlush}
+     * is set, the buffer is pushed to {@code out} (and {@code out} is flushed,
+     * if it's {@link java.io.Flushable}) at the end of every line.
+     */
+    public PrettyPrinter(int width, Appendable out, boolean autoFlush) {
+        this(width, Sink.of(out, Sink.DEFAULT_BUFFER_SIZE, autoFlush));
+    }
+
+    /**
+     * Creates a printer that writes its output to {@code out} encoded as
+     * UTF-8, which it does itself, straight into a byte buffer (see
+     * {@link DocFactory#docTxtUtf8} for text that's encoded ahead of time).
+     * The channel isn't closed once a doc is formatted.
+     */
+    public PrettyPrinter(int width, WritableByteChannel out) {
+        this(width, new ByteSink(out, Sink.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Like {@link #PrettyPrinter(int, WritableByteChannel)}, but writes to
+     * a stream, which is flushed (but not closed) once a doc is formatted.
+     */
+    public PrettyPrinter(int width, OutputStream out) {
+        this(width, new ByteSink(out, Sink.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a printer that writes its output, encoded as UTF-8, into
+     * {@code out} (starting at its position); throws a
+     * {@link java.nio.BufferOverflowException} if it doesn't fit.
+     */
+    public PrettyPrinter(int width, ByteBuffer out) {
+        this(width, new ByteSink(out));
+    }
+
+    PrettyPrinter(int width, Sink writer) {
         this.writer = writer;
         this.width = width;
     }
 
+    /**
+     * Formats {@code doc} to {@code width} on this thread's reusable
+     * printer, so rendering lots of small docs doesn't allocate a printer
+     * (or a buffer to render into) for each one. This is what
+     * {@link Docs.Doc#prettyPrint(int)} uses.
+     */
+    public static String print(Docs.Doc doc, int width) {
+        Reusable r = LOCAL.get();
+        if (r.printer.busy) {
+            StringBuilder sb = new StringBuilder();
+            new PrettyPrinter(width, sb).format(doc);
+            return sb.toString();
+        }
+        try {
+            r.printer.reset(width, r.bufferSink);
+            r.printer.format(doc);
+            return r.buffer.toString();
+        } finally {
+            r.buffer.setLength(0);
+            if (r.buffer.capacity() > MAX_RETAINED_CHARS) {
+                r.buffer.trimToSize();
+            }
+        }
+    }
+
+    /**
+     * Like {@link #print(Docs.Doc, int)}, but appends the output to
+     * {@code out}.
+     */
+    public static void print(Docs.Doc doc, int width, StringBuilder out) {
+        Reusable r = LOCAL.get();
+        if (r.printer.busy) {
+            new PrettyPrinter(width, out).format(doc);
+            return;
+        }
+        try {
+            r.printer.reset(width, out);
+            r.printer.format(doc);
+        } finally {
+            // the printer shouldn't keep the caller's builder reachable
+            r.printer.reset(0, r.bufferSink);
+        }
+    }
+
+    /**
+     * Points this printer at a new output (and width), keeping the layout
+     * cache, if any, and the stacks it has grown so far.
+     */
+    public void reset(int width, StringBuilder writer) {
+        reset(width, Sink.of(writer));
+    }
+
+    public void reset(int width, Appendable out) {
+        reset(width, Sink.of(out, Sink.DEFAULT_BUFFER_SIZE, false));
+    }
+
+    void reset(int width, Sink writer) {
+        if (busy) {
+            throw new IllegalStateException(
+                    "can't reset a printer while it's formatting a doc");
+        }
+        this.writer = writer;
+        this.width = width;
+        if (docs.length > MAX_RETAINED_STACK_SIZE) {
+            indents = new int[INITIAL_STACK_SIZE];
+            modes = new boolean[INITIAL_STACK_SIZE];
+            docs = new Docs.Doc[INITIAL_STACK_SIZE];
+            positions = new int[INITIAL_STACK_SIZE];
+            sp = 0;
+        }
+        if (fitDocs.length > MAX_RETAINED_STACK_SIZE) {
+            fitModes = new boolean[INITIAL_STACK_SIZE];
+            fitDocs = new Docs.Doc[INITIAL_STACK_SIZE];
+            fitPositions = new int[INITIAL_STACK_SIZE];
+        }
+        if (capture.capacity() > MAX_RETAINED_CHARS) {
+            capture.setLength(0);
+            capture.trimToSize();
+        }
+    }
+
+    /**
+     * Lays out groups through {@code cache}, reusing the output of any
+     * group that was already laid out (in the same position) by an earlier
+     * format call; or, if {@code cache} is {@code null}, lays out every
+     * group from scratch (the default).
+     */
+    public void setLayoutCache(LayoutCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Reports the {@link RenderMetrics} of each doc this printer formats to
+     * {@code listener}, or stops reporting them if it's {@code null} (the
+     * default).
+     */
+    public void setRenderListener(RenderListener listener) {
+        this.listener = listener;
+    }
+
     public void format(Docs.Doc hd) {
-        fmt_(0, IList.<FmtState>of().cons(
-                new FmtState(0, false, new Docs.DocGroup(hd))));
-    }
-
-    private void fmt_(int k, IList<FmtState> states) {
-        switch (states) {
-            case EmptyList<FmtState> x -> { }
-            case NonEmptyList<FmtState> z -> {
-                FmtState s = z.head();
-                if (s == null) { return; }
-                var tl = z.tail();
-                switch (z.head().doc()) {
-                    case Docs.DocNil n -> fmt_(k, tl);
-                    case Docs.DocCons d -> fmt_(k, tl.cons(
-                            new FmtState(s.i(), s.b(), d.tl())).cons(
-                            new FmtState(s.i(), s.b(), d.hd())));
-                    case Docs.DocText d -> {
-                        writer.append(d.text());
-                        fmt_(k + d.text().length(), tl);
+        long start = begin();
+        try {
+            // the root group isn't inside any flat group, so it's entered in
+            // break mode (see the DocGroup case in fmt_). a group directly
+            // inside another one is laid out the same as it would be on its
+            // own, so a root that's a group already (and may be cached)
+            // isn't wrapped
+            push(0, true,
+                    hd instanceof Docs.DocGroup ? hd : new Docs.DocGroup(hd));
+            fmt_(0);
+            writer.flush();
+            report(start);
+        } finally {
+            busy = false;
+        }
+    }
+
+    // lays out the n items (top-level docs in break mode, at the given
+    // indents) starting at column 0, as if they were all that's left on the
+    // work stack
+    void format(int[] itemIndents, Docs.Doc[] items, int n) {
+        long start = begin();
+        try {
+            for (int j = n - 1; j >= 0; j--) {
+                push(itemIndents[j], true, items[j]);
+            }
+            fmt_(0);
+            writer.flush();
+            report(start);
+        } finally {
+            busy = false;
+        }
+    }
+
+    /**
+     * The state of a printer at the start of a line: the line number, the
+     * column (i.e. the indent) and a copy of the work stack.
+     */
+    static final class Checkpoint {
+
+        private final long line;
+        private final int column;
+        private final int[] indents;
+        private final boolean[] modes;
+        private final Docs.Doc[] docs;
+        private final int[] positions;
+
+        private Checkpoint(long line, int column, int[] indents,
+                           boolean[] modes, Docs.Doc[] docs, int[] positions) {
+            this.line = line;
+            this.column = column;
+            this.indents = indents;
+            this.modes = modes;
+            this.docs = docs;
+            this.positions = positions;
+        }
+
+        long line() {
+            return line;
+        }
+    }
+
+    // formats hd like format(hd), but writes out only the lines [from, to)
+    // and stops once it gets to line to. starts from checkpoint c (which
+    // has to have been saved while formatting hd, at the same width) if
+    // it's not null, and adds a checkpoint to saved every interval lines
+    // past the last one in it
+    void formatLines(Docs.Doc hd, Checkpoint c, long from, long to,
+                     ArrayList<Checkpoint> saved, int interval) {
+        long start = begin();
+        try {
+            fromLine = from;
+            toLine = to;
+            stopLine = to;
+            checkpoints = saved;
+            checkpointInterval = interval;
+            int k = 0;
+            if (c == null) {
+                push(0, true,
+                        hd instanceof Docs.DocGroup ? hd : new Docs.DocGroup(hd));
+            } else {
+                for (int j = 0; j < c.docs.length; j++) {
+                    push(c.indents[j], c.modes[j], c.docs[j], c.positions[j]);
+                }
+                line = c.line;
+                k = c.column;
+                if (from <= line && line < to) {
+                    // the indent of the first line written (none if it's
+                    // negative, as in Sink.spaces)
+                    text(" ".repeat(Math.max(0, k)));
+                }
+            }
+            fmt_(k);
+            writer.flush();
+            report(start);
+        } finally {
+            fromLine = 0;
+            toLine = Long.MAX_VALUE;
+            stopLine = Long.MAX_VALUE;
+            checkpoints = null;
+            busy = false;
+        }
+    }
+
+    // starts formatting hd a line at a time: each formatLine call after this
+    // lays out the doc up to the end of its next line (see LinePublisher)
+    void startLines(Docs.Doc hd) {
+        begin();
+        busy = false;
+        push(0, true, hd instanceof Docs.DocGroup ? hd : new Docs.DocGroup(hd));
+        column = 0;
+    }
+
+    // returns whether there's anything left to lay out after this line
+    boolean formatLine() {
+        if (busy) {
+            throw new IllegalStateException(
+                    "can't format a doc while already formatting one");
+        }
+        busy = true;
+        try {
+            stopLine = line + 1;
+            column = fmt_(column);
+            writer.flush();
+            return sp > 0;
+        } finally {
+            stopLine = Long.MAX_VALUE;
+            busy = false;
+        }
+    }
+
+    private void checkpoint(int k) {
+        if (!recording.isEmpty()) {
+            return;
+        }
+        int n = checkpoints.size();
+        if (n > 0 && checkpoints.get(n - 1).line >= line) {
+            return;
+        }
+        checkpoints.add(new Checkpoint(line, k,
+                Arrays.copyOf(indents, sp), Arrays.copyOf(modes, sp),
+                Arrays.copyOf(docs, sp), Arrays.copyOf(positions, sp)));
+    }
+
+    // returns the time formatting started at, if it's being reported
+    private long begin() {
+        if (busy) {
+            throw new IllegalStateException(
+                    "can't format a doc while already formatting one");
+        }
+        busy = true;
+        clear();
+        nodes = 0;
+        fitsCalls = 0;
+        fitsSteps = 0;
+        groupsBroken = 0;
+        groupsFlat = 0;
+        maxStackDepth = 0;
+        chars = 0;
+        line = 0;
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    private void report(long start) {
+        if (listener != null) {
+            listener.rendered(new RenderMetrics(nodes, fitsCalls, fitsSteps,
+                    groupsBroken, groupsFlat, maxStackDepth, chars,
+                    System.nanoTime() - start));
+        }
+    }
+
+    // both fmt_ and fits_ walk an explicit work stack rather than recursing
+    // once per doc node, so the java stack stays constant no matter how long
+    // or how deeply nested the doc is. the stack is stored as parallel arrays
+    // (indent, mode, doc, position) that are grown on demand and reused, so
+    // no objects are allocated per node; mode is true for break mode, and a
+    // concat's position is the index of the next doc in it to print (so a
+    // concat takes up a single entry however long it is).
+    private int fmt_(int k) {
+        // counted in a local, which (unlike a field) can stay in a register
+        long visited = 0;
+        while (sp > 0 && line < stopLine) {
+            visited = visited + 1;
+            sp = sp - 1;
+            int i = indents[sp];
+            boolean b = modes[sp];
+            Docs.Doc doc = docs[sp];
+            int j = positions[sp];
+            docs[sp] = null;  // printed docs shouldn't stay reachable
+            switch (doc) {
+                case Docs.DocNil n -> { }
+                case Docs.DocCons d -> {
+                    push(i, b, d.tl());
+                    push(i, b, d.hd());
+                }
+                case Docs.DocConcat d -> {
+                    if (j + 1 < d.size()) {
+                        push(i, b, d, j + 1);
                     }
-                    case Docs.DocNest d -> fmt_(k, tl.cons(new FmtState(
-                            s.i() + d.indent(), s.b(), d.doc())));
-                    case Docs.DocBreak d && s.b() -> {
-                        writer.append("\n");
-                        spaces(s.i());
-                        fmt_(s.i(), tl);
+                    if (j < d.size()) {
+                        push(i, b, d.get(j));
                     }
-                    case Docs.DocBreak d -> {
-                        writer.append(" ");
-                        fmt_(k + 1, z.tail());
+                }
+                case Docs.DocText d && d == GROUP_END -> endRecording(k);
+                case Docs.DocText d -> {
+                    text(d);
+                    k = k + d.flatWidth();
+                }
+                case Docs.DocNest d -> push(i + d.indent(), b, d.doc());
+                case Docs.DocBreak d && b -> {
+                    lineBreak(i);
+                    k = i;
+                }
+                case Docs.DocBreak d -> {
+                    text(" ");
+                    k = k + 1;
+                }
+                case Docs.DocGroup d && cache != null && cache.accepts(d) ->
+                        k = cachedGroup(i, b, k, d);
+                case Docs.DocGroup d -> {
+                    // a group inside a flat group always fits, and one
+                    // without breaks prints the same either way
+                    boolean fitsFlat = !b || !d.hasBreak() || fits(width - k, d);
+                    countGroup(fitsFlat);
+                    push(i, !fitsFlat, d.doc());
+                }
+                case Docs.DocFill d && j == 0 -> {
+                    if (d.size() > 1) {
+                        push(i, b, d, 1);
+                    }
+                    if (d.size() > 0) {
+                        push(i, b, d.get(0));
+                    }
+                }
+                case Docs.DocFill d -> {
+                    // the break before item j is decided by measuring just
+                    // the item, as the break after it can still be taken;
+                    // only the last one is measured along with what follows
+                    // the fill
+                    boolean last = j + 1 == d.size();
+                    if (!last) {
+                        push(i, b, d, j + 1);
                     }
-                    case Docs.DocGroup d -> {
-                        boolean fitsFlat = fits(width - k,
-                                tl.cons(new FmtState(s.i(), false, d.doc())));
-                        fmt_(k, tl.cons(new FmtState(s.i(),
-                                !fitsFlat, d.doc())));
+                    boolean fitsFlat = !b
+                            || fitsFlat(width - k - 1, d.get(j), last ? sp : 0);
+                    push(i, b && !fitsFlat, d.get(j));
+                    if (fitsFlat) {
+                        text(" ");
+                        k = k + 1;
+                    } else {
+                        lineBreak(i);
+                        k = i;
                     }
                 }
+                case Docs.DocLazy d -> push(i, b, d.expand());
             }
         }
+        nodes = nodes + visited;
+        return k;
     }
 
-    // todo make tail recursive (might be already; use tce here)..
-    private boolean fits(int w, IList<FmtState> fmtStates) {
-        return fits_(w, fmtStates);
-    }
-
-    private boolean fits_(int w, IList<FmtState> fmtStates) {
-        return switch (fmtStates) {
-            case IList<FmtState> z && w < 0 -> false;
-            case EmptyList<FmtState> z -> true;
-            case NonEmptyList<FmtState> z -> {
-                FmtState s = z.head();
-                yield switch (z.head().doc()) {
-                    case Docs.DocNil n -> fits_(w, z.tail());
-                    case Docs.DocCons d -> fits_(w, z.tail()
-                            .cons(new FmtState(s.i(), s.b(), d.tl()))
-                            .cons(new FmtState(s.i(), s.b(), d.hd())));
-                    case Docs.DocText dt ->
-                            fits_(w - dt.text().length(), z.tail());
-                    case Docs.DocNest d -> fits_(w, z.tail().cons(new FmtState(
-                            s.i() + d.indent(), s.b(), d.doc())));
-                    case Docs.DocBreak d && !s.b() -> fits_(w - 1, z.tail());
-                    case Docs.DocBreak d -> true;
-                    case Docs.DocGroup d ->
-                            fits_(w, z.tail().cons(new FmtState(s.i(),
-                                    false, d.doc())));
-                };
-            }
-        };
+    // a line break at indent i; the work stack must already hold everything
+    // after it, as that's what a checkpoint taken here resumes from
+    private void lineBreak(int i) {
+        newline(i);
+        if (checkpoints != null && line % checkpointInterval == 0) {
+            checkpoint(i);
+        }
+    }
+
+    // replays the output of group d from the cache if it's there, otherwise
+    // lays it out as usual (recording its output); returns the new column
+    private int cachedGroup(int i, boolean b, int k, Docs.DocGroup d) {
+        boolean fitsFlat = !b || !d.hasBreak();
+        LayoutCache.Key key;
+        if (fitsFlat) {
+            key = LayoutCache.flatKey(d);
+        } else {
+            // what follows the group only matters up to where it no longer
+            // fits on the line in any case
+            fitsCalls = fitsCalls + 1;
+            int rest = rest_(width, sp, 0);
+            int run = rest < 0 ? width + 1 : width - rest;
+            key = LayoutCache.key(d, width, i, k, run);
+            fitsFlat = rest >= 0 && d.flatWidth() <= width - k - run;
+        }
+        countGroup(fitsFlat);
+        LayoutCache.Layout layout = cache.get(key);
+        if (layout != null) {
+            replay(layout.text());
+            return k + layout.advance();
+        }
+        recording.add(key);
+        recordingStarts.add(capture.length());
+        recordingColumns.add(k);
+        push(0, b, GROUP_END);
+        push(i, !fitsFlat, d.doc());
+        return k;
+    }
+
+    // k is the column the group ended at
+    private void endRecording(int k) {
+        int last = recording.size() - 1;
+        cache.put(recording.remove(last), new LayoutCache.Layout(
+                capture.substring(recordingStarts.remove(last)),
+                k - recordingColumns.remove(last)));
+        if (last == 0) {
+            capture.setLength(0);
+        }
+    }
+
+    private void replay(String fragment) {
+        int start = 0;
+        int nl = fragment.indexOf('\n');
+        while (nl >= 0) {
+            text(fragment.substring(start, nl));
+            newline(0);
+            start = nl + 1;
+            nl = fragment.indexOf('\n', start);
+        }
+        text(start == 0 ? fragment : fragment.substring(start));
+    }
+
+    private void countGroup(boolean flat) {
+        if (flat) {
+            groupsFlat = groupsFlat + 1;
+        } else {
+            groupsBroken = groupsBroken + 1;
+        }
+    }
+
+    private void text(Docs.DocText d) {
+        if (line >= fromLine) {
+            chars = chars + d.text().length();
+            writer.text(d);
+        }
+        if (!recording.isEmpty()) {
+            capture.append(d.text());
+        }
     }
 
-    private void spaces(int n) {
-        while (n >= 16) {
-            writer.append("                ");
-            n = n - 16;
+    private void text(String s) {
+        if (line >= fromLine) {
+            chars = chars + s.length();
+            writer.text(s);
         }
-        if (n >= 8) {
-            writer.append("        ");
-            n = n - 8;
+        if (!recording.isEmpty()) {
+            capture.append(s);
         }
-        if (n >= 4) {
-            writer.append("    ");
-            n = n - 4;
+    }
+
+    private void newline(int i) {
+        line = line + 1;
+        // a negative indent writes no spaces, as in Sink.spaces
+        int spaces = Math.max(0, i);
+        if (line > fromLine && line < toLine) {
+            chars = chars + 1 + spaces;
+            writer.newline(i);
+        } else if (line == fromLine && line < toLine) {
+            // the first line written starts with its indent
+            chars = chars + spaces;
+            writer.text(" ".repeat(spaces));
         }
-        if (n >= 2) {
-            writer.append("  ");
-            n = n - 2;
+        if (!recording.isEmpty()) {
+            capture.append('\n');
+            Sink.spaces(capture, i);
         }
-        if (n == 1) {
-            writer.append(" ");
+    }
+
+    // measures doc in break mode, i.e. up to its first line break; lets the
+    // benchmarks time fits_ on its own
+    boolean fits(int w, Docs.Doc doc) {
+        return fits_(w, 0, fitPush(0, true, doc));
+    }
+
+    // whether group d fits flat in w columns, followed by the rest of the
+    // work stack up to its next line break
+    private boolean fits(int w, Docs.DocGroup d) {
+        return fitsFlat(w, d.doc(), sp);
+    }
+
+    // whether doc, printed flat, and then the first next entries of the work
+    // stack fit in w
+    private boolean fitsFlat(int w, Docs.Doc doc, int next) {
+        fitsCalls = fitsCalls + 1;
+        if (doc.flatWidth() < 0) {
+            // the width isn't known until the lazy docs in it are expanded
+            return fits_(w, next, fitPush(0, false, doc));
         }
+        // otherwise the doc is measured in one go by its flat width and
+        // only the continuation needs scanning
+        return doc.flatWidth() <= w && fits_(w - doc.flatWidth(), next, 0);
+    }
+
+    // measures the first next entries of the work stack (top down), after
+    // the fsp entries already on the scratch stack. the work stack is only
+    // read; the subtrees fits_ has to expand (those in break mode that
+    // contain breaks, and those whose width isn't known) go on the scratch
+    // stack.
+    private boolean fits_(int w, int next, int fsp) {
+        return rest_(w, next, fsp) >= 0;
+    }
+
+    // does the measuring for fits_: returns the width that's left at the
+    // first line break (or the end), or a negative width once it runs out
+    private int rest_(int w, int next, int fsp) {
+        long steps = 0;
+        while (w >= 0) {
+            steps = steps + 1;
+            boolean b;
+            Docs.Doc doc;
+            int j;
+            if (fsp > 0) {
+                fsp = fsp - 1;
+                b = fitModes[fsp];
+                doc = fitDocs[fsp];
+                j = fitPositions[fsp];
+                fitDocs[fsp] = null;
+            } else if (next > 0) {
+                next = next - 1;
+                b = modes[next];
+                doc = docs[next];
+                j = positions[next];
+            } else {
+                fitsSteps = fitsSteps + steps - 1;
+                return w;
+            }
+            switch (doc) {
+                case Docs.DocCons d && (b && d.hasBreak() || d.flatWidth() < 0) -> {
+                    fsp = fitPush(fsp, b, d.tl());
+                    fsp = fitPush(fsp, b, d.hd());
+                }
+                // a concat that's partly printed is measured doc by doc, as
+                // only its full width is known
+                case Docs.DocConcat d
+                        && (j > 0 || b && d.hasBreak() || d.flatWidth() < 0) -> {
+                    if (j + 1 < d.size()) {
+                        fsp = fitPush(fsp, b, d, j + 1);
+                    }
+                    if (j < d.size()) {
+                        fsp = fitPush(fsp, b, d.get(j));
+                    }
+                }
+                // the breaks of a fill are measured flat, like those of the
+                // groups it's equivalent to
+                case Docs.DocFill d
+                        && (j > 0 || b && d.hasBreak() || d.flatWidth() < 0) -> {
+                    if (j + 1 < d.size()) {
+                        fsp = fitPush(fsp, b, d, j + 1);
+                    }
+                    if (j > 0) {
+                        w = w - 1;
+                        fsp = fitPush(fsp, false, d.get(j));
+                    } else if (d.size() > 0) {
+                        fsp = fitPush(fsp, b, d.get(0));
+                    }
+                }
+                case Docs.DocNest d && (b && d.hasBreak() || d.flatWidth() < 0) ->
+                        fsp = fitPush(fsp, b, d.doc());
+                case Docs.DocGroup d && d.flatWidth() < 0 ->
+                        fsp = fitPush(fsp, false, d.doc());
+                case Docs.DocLazy d && (b && d.hasBreak() || d.flatWidth() < 0) ->
+                        fsp = fitPush(fsp, b, d.expand());
+                case Docs.DocBreak d && b -> {
+                    Arrays.fill(fitDocs, 0, fsp, null);
+                    fitsSteps = fitsSteps + steps;
+                    return w;
+                }
+                case Docs.DocText d && d == OVERFULL -> w = -1;
+                // anything else is measured flat (groups always are), so its
+                // cached flat width accounts for the whole subtree
+                default -> w = w - doc.flatWidth();
+            }
+        }
+        Arrays.fill(fitDocs, 0, fsp, null);
+        fitsSteps = fitsSteps + steps;
+        return w;
+    }
+
+    private void push(int i, boolean b, Docs.Doc doc) {
+        push(i, b, doc, 0);
+    }
+
+    private void push(int i, boolean b, Docs.Doc doc, int j) {
+        if (sp == docs.length) {
+            int n = sp * 2;
+            indents = Arrays.copyOf(indents, n);
+            modes = Arrays.copyOf(modes, n);
+            docs = Arrays.copyOf(docs, n);
+            positions = Arrays.copyOf(positions, n);
+        }
+        indents[sp] = i;
+        modes[sp] = b;
+        docs[sp] = doc;
+        positions[sp] = j;
+        sp = sp + 1;
+        if (sp > maxStackDepth) {
+            maxStackDepth = sp;
+        }
+    }
+
+    private int fitPush(int fsp, boolean b, Docs.Doc doc) {
+        return fitPush(fsp, b, doc, 0);
+    }
+
+    private int fitPush(int fsp, boolean b, Docs.Doc doc, int j) {
+        if (fsp == fitDocs.length) {
+            fitModes = Arrays.copyOf(fitModes, fsp * 2);
+            fitDocs = Arrays.copyOf(fitDocs, fsp * 2);
+            fitPositions = Arrays.copyOf(fitPositions, fsp * 2);
+        }
+        fitModes[fsp] = b;
+        fitDocs[fsp] = doc;
+        fitPositions[fsp] = j;
+        return fsp + 1;
+    }
+
+    // drops anything left over from a format call that didn't complete
+    private void clear() {
+        Arrays.fill(docs, 0, sp, null);
+        sp = 0;
+        recording.clear();
+        recordingStarts.clear();
+        recordingColumns.clear();
+        capture.setLength(0);
     }
 }
@@ -0,0 +1,40 @@
+package prettyprint;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// the jfr event RenderListener.jfr emits; its fields mirror RenderMetrics
+@Name("prettyprint.Render")
+@Label("Pretty Print Render")
+@Category("Pretty Printing")
+@Description("The cost of laying out one doc")
+final class RenderEvent extends jdk.jfr.Event {
+
+    @Label("Nodes") long nodes;
+    @Label("Fits Calls") long fitsCalls;
+    @Label("Fits Steps") long fitsSteps;
+    @Label("Groups Broken") long groupsBroken;
+    @Label("Groups Flat") long groupsFlat;
+    @Label("Max Stack Depth") int maxStackDepth;
+    @Label("Characters") long chars;
+    @Label("Render Time") @Timespan(Timespan.NANOSECONDS) long renderTime;
+
+    static void emit(RenderMetrics m) {
+        RenderEvent e = new RenderEvent();
+        if (!e.isEnabled()) {
+            return;
+        }
+        e.nodes = m.nodes();
+        e.fitsCalls = m.fitsCalls();
+        e.fitsSteps = m.fitsSteps();
+        e.groupsBroken = m.groupsBroken();
+        e.groupsFlat = m.groupsFlat();
+        e.maxStackDepth = m.maxStackDepth();
+        e.chars = m.chars();
+        e.renderTime = m.nanos();
+        e.commit();
+    }
+}
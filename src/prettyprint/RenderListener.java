@@ -0,0 +1,21 @@
+package prettyprint;
+
+/**
+ * Receives the {@link RenderMetrics} of every doc a {@link PrettyPrinter}
+ * lays out (see {@link PrettyPrinter#setRenderListener}), once the doc is
+ * done. Listeners are called on the thread that did the rendering.
+ */
+@FunctionalInterface
+public interface RenderListener {
+
+    void rendered(RenderMetrics metrics);
+
+    /**
+     * A listener that records each render as a {@code prettyprint.Render}
+     * JFR event, for when a flight recording with that event enabled is
+     * running (and does next to nothing otherwise).
+     */
+    static RenderListener jfr() {
+        return RenderEvent::emit;
+    }
+}
@@ -0,0 +1,23 @@
+package prettyprint;
+
+/**
+ * What laying out one doc cost a {@link PrettyPrinter}:
+ * <ul>
+ *   <li>{@code nodes}: the docs the printer visited (popped off its work
+ *   stack), counting each doc of a concat;</li>
+ *   <li>{@code fitsCalls} and {@code fitsSteps}: how often it checked
+ *   whether a group (or the next item of a fill) fits, counting the checks
+ *   settled by a cached flat width alone, and the docs visited scanning
+ *   what follows for the rest;</li>
+ *   <li>{@code groupsBroken} and {@code groupsFlat}: the groups it laid out
+ *   in break mode and flat (including those inside flat groups);</li>
+ *   <li>{@code maxStackDepth}: the deepest its work stack got;</li>
+ *   <li>{@code chars}: the characters it emitted (indentation included);</li>
+ *   <li>{@code nanos}: the wall time the whole render took.</li>
+ * </ul>
+ * A render whose {@code fitsSteps} are large compared to its {@code nodes}
+ * is spending its time measuring rather than printing.
+ */
+public record RenderMetrics(long nodes, long fitsCalls, long fitsSteps,
+                            long groupsBroken, long groupsFlat,
+                            int maxStackDepth, long chars, long nanos) { }
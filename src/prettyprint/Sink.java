@@ -0,0 +1,194 @@
+package prettyprint;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * The destination a printer writes its rendered output to. Printers only ever
+ * emit text runs and (indented) line breaks, so that's all a sink needs to
+ * handle.
+ */
+interface Sink {
+
+    int DEFAULT_BUFFER_SIZE = 8192;
+
+    void text(String s);
+
+    // sinks that can use the doc itself (rather than just its text) override
+    // this
+    default void text(Docs.DocText d) {
+        text(d.text());
+    }
+
+    // a line break followed by indent spaces
+    void newline(int indent);
+
+    // pushes any buffered output through to the underlying destination
+    void flush();
+
+    static Sink of(StringBuilder writer) {
+        return new StringBuilderSink(writer);
+    }
+
+    static Sink of(Appendable out, int bufferSize, boolean autoFlush) {
+        if (out instanceof StringBuilder sb) {
+            return new StringBuilderSink(sb);
+        }
+        return new AppendableSink(out, bufferSize, autoFlush);
+    }
+
+    static void spaces(StringBuilder writer, int n) {
+        while (n >= 16) {
+            writer.append("                ");
+            n = n - 16;
+        }
+        if (n >= 8) {
+            writer.append("        ");
+            n = n - 8;
+        }
+        if (n >= 4) {
+            writer.append("    ");
+            n = n - 4;
+        }
+        if (n >= 2) {
+            writer.append("  ");
+            n = n - 2;
+        }
+        if (n == 1) {
+            writer.append(" ");
+        }
+    }
+
+    // writes straight into the caller's builder; there's nothing to buffer
+    final class StringBuilderSink implements Sink {
+
+        private final StringBuilder writer;
+
+        StringBuilderSink(StringBuilder writer) {
+            this.writer = writer;
+        }
+
+        @Override public void text(String s) {
+            writer.append(s);
+        }
+
+        @Override public void newline(int indent) {
+            writer.append('\n');
+            spaces(writer, indent);
+        }
+
+        @Override public void flush() { }
+    }
+
+    // collects the lines a printer writes, for handing out one at a time;
+    // the line being written is only complete once the next one starts (or
+    // finish is called)
+    final class LineSink implements Sink {
+
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+        private final StringBuilder current = new StringBuilder();
+
+        @Override public void text(String s) {
+            current.append(s);
+        }
+
+        @Override public void newline(int indent) {
+            lines.add(current.toString());
+            current.setLength(0);
+            spaces(current, indent);
+        }
+
+        @Override public void flush() { }
+
+        void finish() {
+            lines.add(current.toString());
+            current.setLength(0);
+        }
+
+        boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        String poll() {
+            return lines.poll();
+        }
+    }
+
+    /**
+     * Collects output in a bounded buffer that is handed to the underlying
+     * {@link Appendable} whenever it fills up (and, if {@code autoFlush} is
+     * set, at the end of every line), so memory use doesn't grow with the
+     * size of the output.
+     */
+    final class AppendableSink implements Sink {
+
+        private final Appendable out;
+        private final StringBuilder buffer;
+        private final int bufferSize;
+        private final boolean autoFlush;
+
+        AppendableSink(Appendable out, int bufferSize, boolean autoFlush) {
+            if (out == null) {
+                throw new IllegalArgumentException("can't write to a null sink");
+            }
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException(
+                        "buffer size must be positive");
+            }
+            this.out = out;
+            this.bufferSize = bufferSize;
+            this.buffer = new StringBuilder(bufferSize);
+            this.autoFlush = autoFlush;
+        }
+
+        @Override public void text(String s) {
+            if (buffer.length() + s.length() > bufferSize) {
+                drain();
+                if (s.length() >= bufferSize) {
+                    write(s);
+                    return;
+                }
+            }
+            buffer.append(s);
+        }
+
+        @Override public void newline(int indent) {
+            if (buffer.length() + indent + 1 > bufferSize) {
+                drain();
+            }
+            buffer.append('\n');
+            if (autoFlush) {
+                flush();
+            }
+            spaces(buffer, indent);
+        }
+
+        @Override public void flush() {
+            drain();
+            if (out instanceof Flushable f) {
+                try {
+                    f.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private void drain() {
+            if (buffer.length() > 0) {
+                write(buffer);
+                buffer.setLength(0);
+            }
+        }
+
+        private void write(CharSequence s) {
+            try {
+                out.append(s);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
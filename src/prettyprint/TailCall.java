@@ -72,6 +72,36 @@ public abstract class TailCall<T> {
         }
     }
 
+    /**
+     * A trampoline that doesn't allocate per step: rather than returning a
+     * new {@code Suspend} (and capturing lambda) for every call, the state of
+     * the computation lives in the fields of one mutable frame, and each
+     * step updates them in place. {@link #eval()} is just a loop over
+     * {@link #step()}, so once the JIT inlines the step, what's left is
+     * (about) the while loop the recursion would have been written as.
+     * <p>
+     * <b>Note:</b> as with {@link #sus}, only tail recursive methods can be
+     * written this way; the arguments of the recursive call become the new
+     * values of the frame's fields.
+     *
+     * @param <T> the type of the result
+     */
+    public abstract static class Frame<T> {
+
+        // takes one step of the computation; returns false once the result
+        // is ready
+        protected abstract boolean step();
+
+        protected abstract T result();
+
+        public final T eval() {
+            while (step()) {
+                // the work happens in step
+            }
+            return result();
+        }
+    }
+
     public static <T> Return<T> ret(T t) {
         return new Return<>(t);
     }
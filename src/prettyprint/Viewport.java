@@ -0,0 +1,100 @@
+package prettyprint;
+
+import java.util.ArrayList;
+
+/**
+ * Renders a range of the lines a doc formats to, e.g. a page of a document
+ * far too long to show at once, without writing out (or holding on to) the
+ * rest of the output. The doc is still laid out from the start up to the
+ * last requested line, but nothing before the range is written and nothing
+ * after it is laid out.
+ * <p>
+ * Every {@code checkpointInterval} lines, the viewport saves the state of
+ * its printer (a copy of its work stack, whose size is the depth of the
+ * doc rather than the length of the output), so rendering a later range
+ * picks up from the last checkpoint before it rather than from the start
+ * of the doc. Checkpoints keep the docs still to be printed at that point
+ * reachable, including any {@link Docs.DocLazy} expansions.
+ * <p>
+ * A viewport isn't thread safe.
+ */
+public final class Viewport {
+
+    static final int DEFAULT_CHECKPOINT_INTERVAL = 1024;
+
+    private final Docs.Doc doc;
+    private final int width;
+    private final int checkpointInterval;
+    // sorted by line
+    private final ArrayList<PrettyPrinter.Checkpoint> checkpoints =
+            new ArrayList<>();
+    private final PrettyPrinter printer;
+
+    public Viewport(Docs.Doc doc, int width) {
+        this(doc, width, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    public Viewport(Docs.Doc doc, int width, int checkpointInterval) {
+        if (doc == null) {
+            throw new IllegalArgumentException(
+                    "can't construct a viewport w/ a null doc");
+        }
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "checkpoint interval must be positive");
+        }
+        this.doc = doc;
+        this.width = width;
+        this.checkpointInterval = checkpointInterval;
+        this.printer = new PrettyPrinter(width, new StringBuilder());
+    }
+
+    /**
+     * Returns lines {@code from} (inclusive) to {@code to} (exclusive),
+     * counting from 0, joined by line breaks; i.e. what splitting the whole
+     * output on line breaks would give for those lines. Lines past the end
+     * of the output are empty (left out).
+     */
+    public String lines(long from, long to) {
+        StringBuilder sb = new StringBuilder();
+        render(from, to, sb);
+        return sb.toString();
+    }
+
+    /** Like {@link #lines}, but streams the lines into {@code out}. */
+    public void render(long from, long to, Appendable out) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException(
+                    "invalid line range: [" + from + ", " + to + ")");
+        }
+        if (from == to) {
+            return;
+        }
+        printer.reset(width, out);
+        printer.formatLines(doc, checkpointBefore(from), from, to,
+                checkpoints, checkpointInterval);
+    }
+
+    /** The number of checkpoints saved so far. */
+    public int checkpoints() {
+        return checkpoints.size();
+    }
+
+    // the last checkpoint at or before line, if there is one
+    private PrettyPrinter.Checkpoint checkpointBefore(long line) {
+        int lo = 0;
+        int hi = checkpoints.size() - 1;
+        PrettyPrinter.Checkpoint result = null;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            PrettyPrinter.Checkpoint c = checkpoints.get(mid);
+            if (c.line() <= line) {
+                result = c;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+package prettyprint.immutableadts;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A non-empty list whose first elements are stored in an array (a chunk),
+ * followed by any other list. It's still a {@link NonEmptyList}, so code
+ * that matches on {@code head()}/{@code tail()} works on it unchanged, but
+ * its size is known up front, indexing into the chunk takes constant time
+ * and iterating over it is just a walk over the array.
+ * <p>
+ * Taking the {@code tail()} of a chunked list returns a view of the rest of
+ * the same chunk, so the chunk is never copied once it's built. The chunk
+ * has to be a fresh array that nothing else writes to (see
+ * {@link IList#of}).
+ */
+public final class ChunkedList<T> extends NonEmptyList<T> {
+
+    private final T[] chunk;
+    private final int start;
+    private final IList<T> rest;
+    private final int size;
+
+    // requires: start < chunk.length
+    ChunkedList(T[] chunk, int start, IList<T> rest) {
+        this(chunk, start, rest, chunk.length - start + rest.length());
+    }
+
+    private ChunkedList(T[] chunk, int start, IList<T> rest, int size) {
+        this.chunk = chunk;
+        this.start = start;
+        this.rest = rest;
+        this.size = size;
+    }
+
+    @Override
+    public T head() {
+        return chunk[start];
+    }
+
+    @Override
+    public IList<T> tail() {
+        return start + 1 < chunk.length
+                ? new ChunkedList<>(chunk, start + 1, rest, size - 1)
+                : rest;
+    }
+
+    @Override
+    public int length() {
+        return size;
+    }
+
+    @Override
+    public T get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index out of range: " + i);
+        }
+        int n = chunk.length - start;
+        return i < n ? chunk[start + i] : rest.get(i - n);
+    }
+
+    @Override
+    public IList<T> drop(int n) {
+        if (n <= 0) {
+            return this;
+        }
+        int inChunk = chunk.length - start;
+        return n < inChunk
+                ? new ChunkedList<>(chunk, start + n, rest, size - n)
+                : rest.drop(n - inChunk);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            int i = start;
+            Iterator<T> restIter = null;
+
+            @Override public boolean hasNext() {
+                return i < chunk.length || rest().hasNext();
+            }
+
+            @Override public T next() {
+                if (i < chunk.length) {
+                    return chunk[i++];
+                }
+                if (!rest().hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return restIter.next();
+            }
+
+            private Iterator<T> rest() {
+                if (restIter == null) {
+                    restIter = rest.iterator();
+                }
+                return restIter;
+            }
+        };
+    }
+}
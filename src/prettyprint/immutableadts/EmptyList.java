@@ -2,16 +2,14 @@ package prettyprint.immutableadts;
 
 public final class EmptyList<T> implements IList<T> {
 
-    private static IList<?> instance = null;
+    // created eagerly, so every thread sees the same instance
+    private static final IList<?> INSTANCE = new EmptyList<>();
 
     private EmptyList() {}
 
     @SuppressWarnings("unchecked")
     public static <T> IList<T> emp() {
-        if (instance == null) {
-            instance = new EmptyList<>();
-        }
-        return (IList<T>) instance;
+        return (IList<T>) INSTANCE;
     }
 
     @Override
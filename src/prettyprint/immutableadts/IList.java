@@ -24,18 +24,35 @@ public sealed interface IList<T> extends Iterable<T>
     IList<T> tail();
 
     default T get(int i) {
-        if (i < 0 || i >= length()) { // O(n)
+        if (i < 0) {
             throw new IndexOutOfBoundsException("index can't be negative");
         }
-        return drop(i).head(); // O(n)
+        IList<T> these = this;
+        while (i > 0 && !these.isEmpty()) {
+            if (these instanceof ChunkedList<T> c) {
+                return c.get(i);
+            }
+            these = these.tail();
+            i = i - 1;
+        }
+        if (these.isEmpty()) {
+            throw new IndexOutOfBoundsException("index out of range");
+        }
+        return these.head();
     }
 
+    // copies this list's elements (in a single chunk) in front of o, which
+    // is shared rather than copied
     default IList<T> appendAll(@NotNull IList<T> o) {
-        return switch (this) {
-            case EmptyList<T> x -> o;
-            case NonEmptyList<T> x ->
-                    new NonEmptyList<>(x.head(), x.tail().appendAll(o));
-        };
+        if (o == null) {
+            throw new IllegalArgumentException("can't append a null list");
+        }
+        if (isEmpty()) {
+            return o;
+        }
+        ListBuilder<T> result = new ListBuilder<>(length());
+        result.addAll(this);
+        return result.build(o);
     }
 
     default IList<T> append(T x) {
@@ -53,105 +70,163 @@ public sealed interface IList<T> extends Iterable<T>
         return reverse().tail().reverse();
     }
 
+    // O(1) for chunked lists; otherwise proportional to the number of cells
+    // up to the first chunk
     default int length() {
-        return foldRight(0, (x, y) -> y + 1);
+        int n = 0;
+        IList<T> these = this;
+        while (!these.isEmpty()) {
+            if (these instanceof ChunkedList<T> c) {
+                return n + c.length();
+            }
+            n = n + 1;
+            these = these.tail();
+        }
+        return n;
     }
 
     // requires: n < |this list|
     default IList<T> drop(int n) {
-        return drop_(this, n).eval();
-    }
+        return new TailCall.Frame<IList<T>>() {
+            IList<T> l = IList.this;
+            int k = n;
 
-    static <A> TailCall<IList<A>> drop_(@NotNull IList<A> l, int n) {
-        return switch (l) {
-            case EmptyList<A> x -> TailCall.ret(l);
-            case NonEmptyList<A> x -> TailCall.sus(() ->
-                    n <= 0 ? TailCall.ret(l) : drop_(l.tail(), n - 1));
-        };
+            @Override protected boolean step() {
+                if (k <= 0 || l.isEmpty()) {
+                    return false;
+                }
+                l = l.tail();
+                k = k - 1;
+                return true;
+            }
+
+            @Override protected IList<T> result() {
+                return l;
+            }
+        }.eval();
     }
 
     default IList<T> dropWhile(@NotNull Predicate<T> p) {
-        return dropWhile_(p, this).eval();
-    }
+        return new TailCall.Frame<IList<T>>() {
+            IList<T> l = IList.this;
 
-    // todo: should get converted into a tail recursive version...
-    private static <A> TailCall<IList<A>> dropWhile_(Predicate<A> p,
-                                                     IList<A> list) {
-        return switch (list) {
-            case NonEmptyList<A> x &&
-                    p.test(x.head()) -> TailCall.sus(() -> dropWhile_(p, x.tail()));
-            default -> TailCall.ret(list);
-        };
+            @Override protected boolean step() {
+                if (l.isEmpty() || !p.test(l.head())) {
+                    return false;
+                }
+                l = l.tail();
+                return true;
+            }
+
+            @Override protected IList<T> result() {
+                return l;
+            }
+        }.eval();
     }
 
     default IList<T> reverse() {
-        return reverse_(of(), this).eval();
-    }
+        return new TailCall.Frame<IList<T>>() {
+            IList<T> acc = of();
+            IList<T> l = IList.this;
 
-    private static <A> TailCall<IList<A>> reverse_(IList<A> acc,
-                                                   IList<A> list) {
-        return switch (list) {
-            case EmptyList<A> x -> TailCall.ret(acc);
-            case NonEmptyList<A> x -> TailCall.sus(() -> reverse_(
-                    new NonEmptyList<>(list.head(), acc), x.tail()));
-        };
+            @Override protected boolean step() {
+                if (l.isEmpty()) {
+                    return false;
+                }
+                acc = new NonEmptyList<>(l.head(), acc);
+                l = l.tail();
+                return true;
+            }
+
+            @Override protected IList<T> result() {
+                return acc;
+            }
+        }.eval();
     }
 
     default <U> U foldLeft(@NotNull U identity,
                            @NotNull BiFunction<U, T, U> f) {
-        return foldLeft_(this, identity,
-                (U x) -> (T y) -> f.apply(x, y)).eval();
-    }
+        if (identity == null || f == null) {
+            throw new IllegalArgumentException(
+                    "can't fold w/ a null identity or operator");
+        }
+        return new TailCall.Frame<U>() {
+            U acc = identity;
+            IList<T> l = IList.this;
 
-    /*default <U> U foldLeft(@NotNull U identity,
-                           @NotNull Function<U, Function<T, U>> f) {
-        return foldLeft_(this, identity, f).eval();
-    }*/
-
-    // every method that ends in "_" is a helper method
-    // uses TCE (tail call elimination)
-    private static <T, U> TailCall<U> foldLeft_(IList<T> ts, U acc,
-                                                Function<U, Function<T, U>> f) {
-        return switch (ts) {
-            case EmptyList<T> x -> TailCall.ret(acc);
-            case NonEmptyList<T> x -> TailCall.sus(() -> foldLeft_(ts.tail(),
-                    f.apply(acc).apply(ts.head()), f));
-        };
-    }
+            @Override protected boolean step() {
+                if (l.isEmpty()) {
+                    return false;
+                }
+                acc = f.apply(acc, l.head());
+                l = l.tail();
+                return true;
+            }
 
-    /*default <U> U foldRight(@NotNull U identity,
-                            @NotNull Function<T, Function<U, U>> f) {
-        return foldRight_(identity, this.reverse(), identity, f).eval();
-    }*/
+            @Override protected U result() {
+                return acc;
+            }
+        }.eval();
+    }
 
     default <U> U foldRight(@NotNull U identity,
                             @NotNull BiFunction<T, U, U> f) {
-        return foldRight_(identity,
-                this.reverse(),
-                (T x) -> (U y) -> f.apply(x, y)).eval();
+        if (identity == null || f == null) {
+            throw new IllegalArgumentException(
+                    "can't fold w/ a null identity or operator");
+        }
+        return reverse().foldLeft(identity, (U acc, T x) -> f.apply(x, acc));
     }
 
-    private static <T, U> TailCall<U> foldRight_(U acc, IList<T> ts,
-                                                 Function<T, Function<U, U>> f) {
-        return switch (ts) {
-            case EmptyList<T> x -> TailCall.ret(acc);
-            case NonEmptyList<T> x -> TailCall.sus(
-                    () -> foldRight_(f.apply(x.head()).apply(acc),
-                            x.tail(), f));
-        };
-    }
+    // the bulk operations below all make a single pass over the list (no
+    // recursion, no reversing), collecting their results into one chunk
 
     default IList<T> filter(Predicate<T> p) {
-        return foldRight(of(), (hd, tl) ->
-                p.test(hd) ? new NonEmptyList<>(hd, tl) : tl);
+        ListBuilder<T> result = new ListBuilder<>();
+        for (T x : this) {
+            if (p.test(x)) {
+                result.add(x);
+            }
+        }
+        return result.build();
     }
 
     default <B> IList<B> flatMap(Function<T, IList<B>> f) {
-        /* Java is unable to infer type of the second parameter for the
-        second function */
-        /* return foldRight(list(), h -> t -> f.apply(h).foldRight(t, x ->
-        (List<B> y) -> new Cons<>(x, y))); */
-        return foldRight(of(), (h, t) -> concat(f.apply(h), t));
+        ListBuilder<B> result = new ListBuilder<>();
+        for (T x : this) {
+            result.addAll(f.apply(x));
+        }
+        return result.build();
+    }
+
+    /**
+     * Maps {@code f} over this list and keeps the results that satisfy
+     * {@code p}; the same as {@code map(f).filter(p)}, but in one pass and
+     * without the intermediate list.
+     */
+    default <B> IList<B> mapFilter(Function<T, B> f, Predicate<B> p) {
+        ListBuilder<B> result = new ListBuilder<>();
+        for (T x : this) {
+            B y = f.apply(x);
+            if (p.test(y)) {
+                result.add(y);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Keeps the elements that satisfy {@code p} and maps {@code f} over
+     * them; the same as {@code filter(p).map(f)}, in one pass.
+     */
+    default <B> IList<B> filterMap(Predicate<T> p, Function<T, B> f) {
+        ListBuilder<B> result = new ListBuilder<>();
+        for (T x : this) {
+            if (p.test(x)) {
+                result.add(f.apply(x));
+            }
+        }
+        return result.build();
     }
 
     default IList<T> cons(T a) {
@@ -165,23 +240,24 @@ public sealed interface IList<T> extends Iterable<T>
     // scala-ish "companion" helper methods
 
     static int sum(IList<Integer> list) {
-        return sum_(list).eval();
-    }
-
-    private static TailCall<Integer> sum_(IList<Integer> list) {
-        return foldLeft_(list, 0, c -> (num -> c + num));
+        return list.foldLeft(0, Integer::sum);
     }
 
     default void foreach(Consumer<T> consumer) {
-        var these = this;
-        while (!these.isEmpty()) {
-            consumer.accept(these.head());
-            these = these.tail();
+        for (T t : this) {
+            consumer.accept(t);
         }
     }
 
     default <B> IList<B> map(Function<T, B> f) {
-        return foldRight(of(), (h, t) -> new NonEmptyList<>(f.apply(h), t));
+        if (isEmpty()) {
+            return of();
+        }
+        ListBuilder<B> result = new ListBuilder<>(length());
+        for (T x : this) {
+            result.add(f.apply(x));
+        }
+        return result.build();
     }
 
     static <A> IList<A> of() {
@@ -205,20 +281,25 @@ public sealed interface IList<T> extends Iterable<T>
      * @return an immutable list.
      */
     @SafeVarargs
+    @SuppressWarnings("unchecked")
     static <A> IList<A> of(A... a) {
-        IList<A> result = of();
-        for (int i = a.length - 1; i >= 0; i--) {
-            result = new NonEmptyList<>(a[i], result);
+        if (a.length == 0) {
+            return of();
         }
-        return result;
+        // copied element by element into a fresh array, so a itself (whose
+        // runtime type may be narrower than A[]) never escapes
+        Object[] chunk = new Object[a.length];
+        for (int i = 0; i < a.length; i++) {
+            chunk[i] = a[i];
+        }
+        return new ChunkedList<>((A[]) chunk, 0, of());
     }
 
+    @SuppressWarnings("unchecked")
     static <A> IList<A> of(List<A> input) {
-        IList<A> result = of();
-        for (int i = input.size() - 1; i >= 0; i--) {
-            result = new NonEmptyList<>(input.get(i), result);
-        }
-        return result;
+        return input.isEmpty()
+                ? of()
+                : new ChunkedList<>((A[]) input.toArray(), 0, of());
     }
 
     static <A, B> B foldRight(IList<A> list, B n,
@@ -227,7 +308,7 @@ public sealed interface IList<T> extends Iterable<T>
     }
 
     static <A> IList<A> concat(IList<A> list1, IList<A> list2) {
-        return foldRight(list1, list2, NonEmptyList::new);
+        return list1.appendAll(list2);
     }
 
     // methods for equals, hashCode, and iterable
@@ -237,15 +318,25 @@ public sealed interface IList<T> extends Iterable<T>
         final IList<T> that = this;
         return new Iterator<>() {
             IList<T> iterableList = that;
+            // takes over once the rest of the list is chunked
+            Iterator<T> chunkIter = null;
 
             @Override public boolean hasNext() {
-                return !iterableList.isEmpty();
+                if (chunkIter == null
+                        && iterableList instanceof ChunkedList<T> c) {
+                    chunkIter = c.iterator();
+                }
+                return chunkIter != null
+                        ? chunkIter.hasNext() : !iterableList.isEmpty();
             }
 
             @Override public T next() {
                 if (!hasNext()) {
                     throw new NoSuchElementException();
                 }
+                if (chunkIter != null) {
+                    return chunkIter.next();
+                }
                 final T result = iterableList.head();
                 iterableList = iterableList.tail();
                 return result;
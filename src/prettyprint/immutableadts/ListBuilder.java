@@ -0,0 +1,53 @@
+package prettyprint.immutableadts;
+
+import java.util.Arrays;
+
+/**
+ * Collects elements front to back in a growable array and then hands the
+ * array over to a {@link ChunkedList}, so that building a list in order
+ * takes neither recursion nor a reversing pass.
+ */
+final class ListBuilder<T> {
+
+    private Object[] elements;
+    private int size = 0;
+
+    ListBuilder() {
+        this(16);
+    }
+
+    ListBuilder(int capacity) {
+        this.elements = new Object[Math.max(capacity, 1)];
+    }
+
+    void add(T x) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size] = x;
+        size = size + 1;
+    }
+
+    void addAll(Iterable<? extends T> xs) {
+        for (T x : xs) {
+            add(x);
+        }
+    }
+
+    // the elements added so far, followed by rest; the builder can't be
+    // used afterwards
+    @SuppressWarnings("unchecked")
+    IList<T> build(IList<T> rest) {
+        if (size == 0) {
+            return rest;
+        }
+        T[] chunk = (T[]) (size == elements.length
+                ? elements : Arrays.copyOf(elements, size));
+        elements = null;
+        return new ChunkedList<>(chunk, 0, rest);
+    }
+
+    IList<T> build() {
+        return build(IList.of());
+    }
+}
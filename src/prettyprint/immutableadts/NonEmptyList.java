@@ -2,7 +2,8 @@ package prettyprint.immutableadts;
 
 import prettyprint.TailCall;
 
-public final class NonEmptyList<T> implements IList<T> {
+public sealed class NonEmptyList<T> implements IList<T>
+        permits ChunkedList {
 
     private final T head;
     private final IList<T> tail;
@@ -12,6 +13,13 @@ public final class NonEmptyList<T> implements IList<T> {
         this.tail = tail;
     }
 
+    // for subclasses that store their elements some other way (and so
+    // override head and tail)
+    NonEmptyList() {
+        this.head = null;
+        this.tail = null;
+    }
+
     @Override
     public T head() {
         return head;
@@ -28,14 +36,24 @@ public final class NonEmptyList<T> implements IList<T> {
                 toString_(new StringBuilder(), this).eval());
     }
 
-    static <T> TailCall<StringBuilder> toString_(StringBuilder acc,
-                                                 IList<T> lst) {
-        return switch (lst) {
-            case EmptyList<T> x -> TailCall.ret(acc);
-            case NonEmptyList<T> x -> TailCall.sus(() ->
-                    toString_(acc.append(x.head())
-                                    .append(x.tail() != EmptyList.emp() ? ", " : ""),
-                            x.tail()));
+    static <T> TailCall.Frame<StringBuilder> toString_(StringBuilder acc,
+                                                       IList<T> lst) {
+        return new TailCall.Frame<>() {
+            IList<T> l = lst;
+
+            @Override protected boolean step() {
+                if (l.isEmpty()) {
+                    return false;
+                }
+                acc.append(l.head())
+                        .append(l.tail() != EmptyList.emp() ? ", " : "");
+                l = l.tail();
+                return true;
+            }
+
+            @Override protected StringBuilder result() {
+                return acc;
+            }
         };
     }
 
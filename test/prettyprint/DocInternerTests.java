@@ -0,0 +1,99 @@
+package prettyprint;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+
+public final class DocInternerTests {
+
+    private static int distinctNodes(Doc d) {
+        IdentityHashMap<Doc, Boolean> seen = new IdentityHashMap<>();
+        List<Doc> todo = new ArrayList<>(List.of(d));
+        while (!todo.isEmpty()) {
+            Doc x = todo.remove(todo.size() - 1);
+            if (seen.put(x, true) == null) {
+                switch (x) {
+                    case Docs.DocCons c -> {
+                        todo.add(c.hd());
+                        todo.add(c.tl());
+                    }
+                    case Docs.DocConcat c -> todo.addAll(List.of(c.docs()));
+                    case Docs.DocNest n -> todo.add(n.doc());
+                    case Docs.DocGroup g -> todo.add(g.doc());
+                    default -> { }
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    @Test public void shareIdenticalNodes() {
+        DocInterner in = new DocInterner();
+        Assertions.assertSame(in.docTxt(","), in.docTxt(","));
+        Assertions.assertSame(in.docTxt("("), new DocInterner().docTxt("("));
+        Assertions.assertSame(in.docTxt("foo"), in.docTxt("f" + "oo".trim()));
+        Doc a = in.docGroup(in.docTxt("f"), in.docNst(2, in.docTxt("x")));
+        Doc b = in.docGroup(in.docTxt("f"), in.docNst(2, in.docTxt("x")));
+        Assertions.assertSame(a, b);
+        Assertions.assertNotSame(in.docNst(2, in.docTxt("x")),
+                in.docNst(3, in.docTxt("x")));
+        Assertions.assertEquals(a, docGroup(docTxt("f"), docNst(2, docTxt("x"))));
+    }
+
+    @Test public void internKeepsPreEncodedText() {
+        DocInterner in = new DocInterner();
+        Docs.DocText plain = (Docs.DocText) in.intern(docTxt("caf\u00e9"));
+        Docs.DocText encoded = (Docs.DocText) in.intern(docTxtUtf8("caf\u00e9"));
+        Assertions.assertNull(plain.utf8());
+        Assertions.assertNotNull(encoded.utf8());
+        Assertions.assertSame(encoded, in.docTxtUtf8("caf\u00e9"));
+        Assertions.assertSame(plain, in.docTxt("caf\u00e9"));
+    }
+
+    @Test public void internSharesRepeatedSubtrees() {
+        List<Doc> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(docGroup(docTxt("("), docNst(2, docTxt("x" + i % 10),
+                    docBrk(), docTxt("y")), docTxt(")")));
+        }
+        Doc d = mkHzJnListDoc(mkHzListDoc(docTxt(","), docBrk()), rows);
+        DocInterner in = new DocInterner();
+        Doc shared = in.intern(d);
+        Assertions.assertEquals(d.prettyPrint(40), shared.prettyPrint(40));
+        Assertions.assertTrue(distinctNodes(shared) * 2 < distinctNodes(d));
+        DocInterner.Stats stats = in.stats();
+        Assertions.assertTrue(stats.shared() > 0 && stats.bytesSaved() > 0);
+    }
+
+    @Test public void internMatchesOnRandomDocs() {
+        Random rnd = new Random(5);
+        DocInterner in = new DocInterner(64);
+        for (int trial = 0; trial < 500; trial++) {
+            Doc d = LinearPrettyPrinterTests.randomDoc(rnd, 6);
+            Doc shared = in.intern(d);
+            Assertions.assertEquals(d, shared);
+            Assertions.assertTrue(in.size() <= 64);
+        }
+    }
+
+    @Test public void internDeepDocs() {
+        Doc d = docNil();
+        for (int i = 0; i < 100_000; i++) {
+            d = docNst(0, docTxt("x"), d);
+        }
+        Doc shared = new DocInterner().intern(d);
+        Assertions.assertEquals(d.prettyPrint(), shared.prettyPrint());
+    }
+
+    @Test public void throwOnNullText() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new DocInterner().docTxt(null));
+    }
+}
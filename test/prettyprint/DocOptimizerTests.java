@@ -0,0 +1,118 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+
+public final class DocOptimizerTests {
+
+    private static String linear(Doc d, int width) {
+        StringBuilder sb = new StringBuilder();
+        new LinearPrettyPrinter(width, sb).format(d);
+        return sb.toString();
+    }
+
+    @Test public void printTheSameAtEveryWidth() {
+        Random rnd = new Random(17);
+        DocOptimizer optimizer = new DocOptimizer();
+        for (int trial = 0; trial < 500; trial++) {
+            Doc shared = LinearPrettyPrinterTests.randomDoc(rnd, 3);
+            Doc d = mkHzListDoc(LinearPrettyPrinterTests.randomDoc(rnd, 5),
+                    docGroup(shared, docNst(rnd.nextInt(3), shared)),
+                    docFill(LinearPrettyPrinterTests.randomDoc(rnd, 3),
+                            docNil(), shared),
+                    docTxt("e"), docTxt("\u0301"), docTxt("\uD83C\uDDFA"),
+                    docTxt("\uD83C\uDDF8"),
+                    LinearPrettyPrinterTests.randomDoc(rnd, 5));
+            Doc optimized = optimizer.optimize(d);
+            for (int w = 0; w <= 30; w++) {
+                String expected = d.prettyPrint(w);
+                Assertions.assertEquals(expected, optimized.prettyPrint(w),
+                        () -> d + "\n" + optimized);
+                Assertions.assertEquals(expected, linear(optimized, w));
+            }
+        }
+        DocOptimizer.Stats stats = optimizer.stats();
+        Assertions.assertTrue(stats.nodesAfter() < stats.nodesBefore());
+    }
+
+    @Test public void rewriteIntoMinimalForm() {
+        DocOptimizer optimizer = new DocOptimizer();
+        Assertions.assertSame(docNil(),
+                optimizer.optimize(mkHzListDoc(docNil(), docNil())));
+        Assertions.assertEquals(docTxt("abc"), optimizer.optimize(
+                new Docs.DocCons(docTxt("a"), mkHzListDoc(docTxt(""),
+                        docNst(2, docTxt("b")), docGroup(docTxt("c"))))));
+        Assertions.assertEquals(docNst(3, docTxt("a"), docBrk()),
+                optimizer.optimize(docNst(1, docNst(2, docTxt("a"),
+                        docBrk()))));
+        Assertions.assertEquals(docGroup(docTxt("a"), docBrk()),
+                optimizer.optimize(docNst(0, docGroup(docGroup(docTxt("a"),
+                        docBrk())))));
+        Assertions.assertEquals(docNst(1, docGroup(docBrk())),
+                optimizer.optimize(docGroup(docNst(1, docGroup(docBrk())))));
+        // the texts would be one flag, two columns narrower than the two
+        // halves apart
+        Doc flag = mkHzListDoc(docTxt("\uD83C\uDDFA"),
+                docTxt("\uD83C\uDDF8"));
+        Assertions.assertEquals(flag, optimizer.optimize(flag));
+        Assertions.assertEquals(new DocOptimizer.Stats(28, 16),
+                optimizer.stats());
+    }
+
+    @Test public void keepSharedSubtreesShared() {
+        List<Doc> items = new ArrayList<>();
+        Doc shared = docGroup(docTxt("a"), docNil(), docBrk(), docTxt("b"));
+        for (int i = 0; i < 100; i++) {
+            items.add(docNst(2, shared));
+        }
+        Docs.DocConcat optimized = (Docs.DocConcat) new DocOptimizer()
+                .optimize(mkHzJnListDoc(docBrk(), items));
+        Assertions.assertSame(((Docs.DocNest) optimized.get(0)).doc(),
+                ((Docs.DocNest) optimized.get(2)).doc());
+        Assertions.assertEquals(199, optimized.size());
+    }
+
+    @Test public void optimizeDeepDocs() {
+        int n = 50_000;
+        Doc list = docNil();
+        Doc groups = docTxt("x");
+        for (int i = 0; i < n; i++) {
+            list = new Docs.DocCons(docTxt("" + i % 10), list);
+            groups = docGroup(docGroup(docTxt("("), groups, docBrk(),
+                    docTxt(")")));
+        }
+        DocOptimizer optimizer = new DocOptimizer();
+        Doc flat = optimizer.optimize(list);
+        Assertions.assertTrue(flat instanceof Docs.DocText);
+        Assertions.assertEquals(n, flat.flatWidth());
+        Doc nested = optimizer.optimize(groups);
+        Assertions.assertEquals(linear(groups, 80), linear(nested, 80));
+    }
+
+    @Test public void visitFewerNodesWhenPrinting() {
+        Doc d = docNil();
+        for (int i = 0; i < 1000; i++) {
+            d = mkHzListDoc(docNst(0, docGroup(docTxt("a"), docTxt("b"))),
+                    docNil(), docGroup(docGroup(d, docBrk())));
+        }
+        Doc optimized = new DocOptimizer().optimize(d);
+        List<RenderMetrics> reported = new ArrayList<>();
+        for (Doc doc : List.of(d, optimized)) {
+            StringBuilder sb = new StringBuilder();
+            PrettyPrinter p = new PrettyPrinter(40, sb);
+            p.setRenderListener(reported::add);
+            p.format(doc);
+        }
+        Assertions.assertEquals(d.prettyPrint(40), optimized.prettyPrint(40));
+        Assertions.assertTrue(
+                reported.get(1).nodes() * 2 < reported.get(0).nodes(),
+                () -> reported.toString());
+    }
+}
@@ -0,0 +1,123 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+
+public final class DocReaderTests {
+
+    @Test public void readBackRandomDocs() {
+        Random rnd = new Random(23);
+        for (int trial = 0; trial < 300; trial++) {
+            Doc d = docFill(LinearPrettyPrinterTests.randomDoc(rnd, 5),
+                    docTxtUtf8("ü"), docNst(-2, docFill("a b c")),
+                    LinearPrettyPrinterTests.randomDoc(rnd, 5));
+            byte[] bytes = DocWriter.toBytes(d);
+            Doc read = DocReader.read(bytes);
+            Doc viewed = DocReader.view(ByteBuffer.wrap(bytes));
+            Assertions.assertEquals(d, read);
+            for (int w = 0; w <= 24; w++) {
+                String expected = d.prettyPrint(w);
+                Assertions.assertEquals(expected, read.prettyPrint(w));
+                Assertions.assertEquals(expected, viewed.prettyPrint(w));
+            }
+        }
+    }
+
+    @Test public void writeSharedSubtreesAndStringsOnce() {
+        Doc shared = docGroup(docTxt("shared"), docBrk(), docTxt("subtree"));
+        List<Doc> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i % 2 == 0 ? shared : docTxt("shared"));
+        }
+        Doc d = mkHzJnListDoc(docBrk(), items);
+        byte[] bytes = DocWriter.toBytes(d);
+        // a few bytes per reference to a node, rather than per copy of it
+        Assertions.assertTrue(bytes.length < 3 * 2000, "" + bytes.length);
+        Doc read = DocReader.read(bytes);
+        Assertions.assertEquals(d, read);
+        Docs.DocConcat c = (Docs.DocConcat) read;
+        Assertions.assertSame(c.get(0), c.get(4));
+    }
+
+    @Test public void writeLazyDocsAsTheirExpansions() {
+        Doc lazy = docLazy(() -> docGroup(docTxt("a"), docBrk(), docTxt("b")));
+        Doc d = docNst(2, docTxt("["), lazy, docTxt("]"));
+        Assertions.assertEquals(-1, d.flatWidth());
+        Doc read = DocReader.read(DocWriter.toBytes(d));
+        Assertions.assertEquals(5, read.flatWidth());
+        Assertions.assertEquals(d.prettyPrint(3), read.prettyPrint(3));
+        Assertions.assertEquals(
+                docNst(2, docTxt("["), docGroup(docTxt("a"), docBrk(),
+                        docTxt("b")), docTxt("]")), read);
+    }
+
+    @Test public void trustTheWrittenTextWidths() {
+        // as if written by a JVM whose Unicode tables make "abc" 5 wide
+        Doc text = new Docs.DocText("abc", 5, false);
+        Doc d = docGroup(docTxt("("), docNst(1, text, docBrk(), text),
+                docTxt(")"));
+        Assertions.assertEquals(13, d.flatWidth());
+        byte[] bytes = DocWriter.toBytes(d);
+        Doc read = DocReader.read(bytes);
+        Doc viewed = DocReader.view(ByteBuffer.wrap(bytes));
+        Assertions.assertEquals(13, read.flatWidth());
+        Assertions.assertEquals(13, viewed.flatWidth());
+        for (int w = 10; w <= 14; w++) {
+            Assertions.assertEquals(d.prettyPrint(w), read.prettyPrint(w));
+            Assertions.assertEquals(d.prettyPrint(w), viewed.prettyPrint(w));
+        }
+    }
+
+    @Test public void printMappedFile() throws Exception {
+        int n = 20_000;
+        Doc d = docTxt("x");
+        for (int i = 0; i < n; i++) {
+            d = docGroup(docTxt("("), d, docBrk(), docTxt(")"));
+        }
+        Path file = Files.createTempFile("doc", ".spdc");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DocWriter.write(d, out);
+            DocWriter.write(d, file);
+            Assertions.assertArrayEquals(out.toByteArray(),
+                    Files.readAllBytes(file));
+            Doc mapped = DocReader.map(file);
+            // the view knows the width of the whole doc without decoding it
+            Assertions.assertEquals(d.flatWidth(), mapped.flatWidth());
+            Assertions.assertEquals(d.prettyPrint(80), mapped.prettyPrint(80));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test public void rejectMalformedInput() {
+        byte[] bytes = DocWriter.toBytes(docGroup(docTxt("a"), docBrk()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> DocReader.read(new byte[] {1, 2, 3}));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> DocReader.read(truncated));
+        for (int i = 5; i < bytes.length; i++) {
+            // a corrupt byte either still decodes to some doc, or is rejected
+            byte[] corrupt = bytes.clone();
+            corrupt[i] = (byte) (corrupt[i] ^ 0x5A);
+            try {
+                DocReader.read(corrupt).prettyPrint(10);
+            } catch (IllegalArgumentException expected) {
+                // rejected
+            }
+        }
+    }
+}
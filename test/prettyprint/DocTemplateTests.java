@@ -0,0 +1,112 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+
+public final class DocTemplateTests {
+
+    // a log line: [level] message {key=value, ...}
+    private static Doc logLine(Doc level, Doc message, Doc key, Doc value) {
+        return docGroup(docTxt("["), level, docTxt("]"), docBrk(),
+                docNst(2, message, docBrk(), docGroup(docTxt("{"),
+                        docNst(1, key, docTxt("="), value, docTxt(","),
+                                docBrk(), key, docTxt("=2")),
+                        docTxt("}"))));
+    }
+
+    private static final DocTemplate LOG_LINE = DocTemplate.compile(h ->
+            logLine(h.hole("level"), h.hole("message"), h.hole("key"),
+                    h.hole("value")));
+
+    @Test public void renderLikeTheDocBuiltWithTheValues() {
+        Random rnd = new Random(5);
+        for (int trial = 0; trial < 200; trial++) {
+            String level = "abcdefgh".substring(rnd.nextInt(8));
+            Doc message = LinearPrettyPrinterTests.randomDoc(rnd, 4);
+            String key = "k".repeat(rnd.nextInt(10));
+            Doc value = rnd.nextBoolean()
+                    ? docTxt("" + rnd.nextInt(1000))
+                    : docFill("a longer value that wraps");
+            Doc expected = logLine(docTxt(level), message, docTxt(key), value);
+            for (int w = 0; w <= 50; w = w + 5) {
+                Assertions.assertEquals(expected.prettyPrint(w),
+                        LOG_LINE.render(w, level, message, key, value));
+            }
+            Assertions.assertEquals(expected,
+                    LOG_LINE.instantiate(level, message, key, value));
+        }
+    }
+
+    @Test public void renderFlatWithoutLayingOut() {
+        Assertions.assertEquals(List.of("level", "message", "key", "value"),
+                LOG_LINE.holes());
+        Map<String, Object> values = Map.of("level", "INFO",
+                "message", docFill("started up"), "key", "pid", "value", 42);
+        Assertions.assertEquals("[INFO] started up {pid=42, pid=2}",
+                LOG_LINE.render(80, values));
+        Assertions.assertEquals("[INFO]\nstarted up\n  {pid=42, pid=2}",
+                LOG_LINE.render(20, values));
+        // the parts without holes are shared by every instance
+        Docs.DocGroup a = (Docs.DocGroup) LOG_LINE.instantiate(values);
+        Docs.DocGroup b = (Docs.DocGroup) LOG_LINE.instantiate("x", "y", "z", 1);
+        Assertions.assertSame(((Docs.DocConcat) a.doc()).get(0),
+                ((Docs.DocConcat) b.doc()).get(0));
+    }
+
+    @Test public void renderShapesWithoutHolesOrThatAreOne() {
+        DocTemplate none = DocTemplate.compile(
+                h -> docGroup("a", Docs.BRK, "b"));
+        Assertions.assertEquals("a b", none.render(80));
+        Assertions.assertEquals("a\nb", none.render(2));
+        DocTemplate whole = DocTemplate.compile(h -> h.hole());
+        Assertions.assertEquals(List.of("0"), whole.holes());
+        Assertions.assertEquals("x y",
+                whole.render(80, docGroup("x", Docs.BRK, "y")));
+    }
+
+    @Test public void leaveHolesInLazyDocsUnfilledEitherWay() {
+        DocTemplate t = DocTemplate.compile(h -> {
+            Doc hidden = h.hole("hidden");
+            return docGroup(docTxt("["), h.hole("shown"), docBrk(),
+                    new Docs.DocLazy(() -> hidden, 0, false), docTxt("]"));
+        });
+        Map<String, String> values = Map.of("shown", "abc", "hidden", "xyz");
+        Doc instance = t.instantiate(values);
+        // flat at the wider widths, laid out at the narrower ones
+        for (int w = 0; w <= 10; w++) {
+            Assertions.assertEquals(instance.prettyPrint(w),
+                    t.render(w, values));
+        }
+        Assertions.assertEquals("[abc ]", t.render(10, values));
+    }
+
+    @Test public void rejectPositionalHolesThatClashWithNamedOnes() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> DocTemplate.compile(h ->
+                        mkHzListDoc(h.hole("1"), h.hole())));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> DocTemplate.compile(h ->
+                        mkHzListDoc(h.hole(), h.hole("0"))));
+        Assertions.assertEquals(List.of("0", "a", "2"), DocTemplate.compile(h ->
+                mkHzListDoc(h.hole(), h.hole("a"), h.hole())).holes());
+    }
+
+    @Test public void rejectMismatchedValues() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> LOG_LINE.render(80, "INFO"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> LOG_LINE.render(80, Map.of("level", "INFO")));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> LOG_LINE.render(80, "INFO", null, "k", "v"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> LOG_LINE.render(80, Map.of("level", "INFO",
+                        "message", "m", "key", "k", "value", "v", "extra", 1)));
+    }
+}
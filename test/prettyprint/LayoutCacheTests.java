@@ -0,0 +1,123 @@
+package prettyprint;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+
+public final class LayoutCacheTests {
+
+    private static String cached(LayoutCache cache, Doc d, int width) {
+        StringBuilder sb = new StringBuilder();
+        PrettyPrinter p = new PrettyPrinter(width, sb);
+        p.setLayoutCache(cache);
+        p.format(d);
+        return sb.toString();
+    }
+
+    // a record-like group wide enough to be cached
+    private static Doc row(int i) {
+        List<Doc> fields = new ArrayList<>();
+        for (int j = 0; j < 8; j++) {
+            fields.add(docTxt("field" + j + "=" + (i * 31 + j)));
+        }
+        return docGroup(docTxt("{"), docNst(2, docBrk(),
+                mkHzJnListDoc(mkHzListDoc(docTxt(","), docBrk()), fields)),
+                docBrk(), docTxt("}"));
+    }
+
+    private static Doc table(List<Doc> rows) {
+        return docGroup(docTxt("["), docNst(1, mkHzJnListDoc(
+                mkHzListDoc(docTxt(","), docBrk()), rows)), docTxt("]"));
+    }
+
+    @Test public void replaysCachedLayout() {
+        List<Doc> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(row(i));
+        }
+        Doc d = table(rows);
+        LayoutCache cache = new LayoutCache(1 << 20);
+        for (int w : new int[] {-1, 20, 80, 200, 10_000}) {
+            String expected = d.prettyPrint(w);
+            Assertions.assertEquals(expected, cached(cache, d, w));
+            long misses = cache.misses();
+            Assertions.assertEquals(expected, cached(cache, d, w));
+            Assertions.assertEquals(misses, cache.misses());
+        }
+    }
+
+    @Test public void relayoutsOnlyEditedGroups() {
+        List<Doc> rows = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            rows.add(row(i));
+        }
+        LayoutCache cache = new LayoutCache(1 << 20);
+        cached(cache, table(rows), 80);
+
+        rows.set(100, row(-1));
+        Doc edited = table(rows);
+        long misses = cache.misses();
+        Assertions.assertEquals(edited.prettyPrint(80),
+                cached(cache, edited, 80));
+        // the new table and the edited row
+        Assertions.assertEquals(misses + 2, cache.misses());
+    }
+
+    @Test public void matchesUncachedOnRandomDocs() {
+        Random rnd = new Random(11);
+        LayoutCache cache = new LayoutCache(1 << 16);
+        List<Doc> parts = new ArrayList<>();
+        for (int trial = 0; trial < 300; trial++) {
+            // random docs reusing (and so hitting the cache for) random
+            // earlier ones in new places
+            Doc[] pieces = new Doc[24];
+            for (int i = 0; i < pieces.length; i++) {
+                pieces[i] = LinearPrettyPrinterTests.randomDoc(rnd, 6);
+            }
+            Doc part = mkHzListDoc(pieces);
+            if (part.flatWidth() >= LayoutCache.MIN_FLAT_WIDTH) {
+                parts.add(docGroup(part));
+            }
+            if (parts.isEmpty()) {
+                continue;
+            }
+            Doc d = docGroup(part, docBrk(), parts.get(rnd.nextInt(parts.size())),
+                    docNst(rnd.nextInt(3), docTxt("x"), docBrk(),
+                            parts.get(rnd.nextInt(parts.size()))));
+            for (int w = 0; w <= 40; w = w + 3) {
+                Assertions.assertEquals(d.prettyPrint(w), cached(cache, d, w));
+            }
+        }
+        Assertions.assertTrue(cache.hits() > 0);
+    }
+
+    @Test public void keepsColumnAfterSplitCluster() {
+        // a flag split between two texts is laid out as two columns for each
+        // half, though the two together display as one flag
+        Doc flagged = docGroup(docTxt("a".repeat(62)),
+                docTxt("\uD83C\uDDFA"), docTxt("\uD83C\uDDF8"));
+        Doc d = mkHzListDoc(flagged, docGroup(docTxt("x"), docBrk(), docTxt("y")));
+        String expected = d.prettyPrint(68);
+        Assertions.assertTrue(expected.endsWith("x\ny"));
+        LayoutCache cache = new LayoutCache(1 << 20);
+        Assertions.assertEquals(expected, cached(cache, d, 68));
+        Assertions.assertEquals(expected, cached(cache, d, 68));
+        Assertions.assertTrue(cache.hits() > 0);
+    }
+
+    @Test public void staysWithinBound() {
+        LayoutCache cache = new LayoutCache(1000);
+        for (int i = 0; i < 100; i++) {
+            Doc d = row(i);
+            Assertions.assertEquals(d.prettyPrint(40), cached(cache, d, 40));
+            Assertions.assertTrue(cache.chars() <= 1000);
+        }
+        Assertions.assertTrue(cache.size() > 0);
+    }
+}
@@ -0,0 +1,64 @@
+package prettyprint;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static prettyprint.DocFactory.*;
+
+public final class LineIteratorTests {
+
+    @Test public void linesOfRandomDocs() {
+        Random rnd = new Random(11);
+        for (int trial = 0; trial < 300; trial++) {
+            Doc d = LinearPrettyPrinterTests.randomDoc(rnd, 7);
+            for (int w = -1; w <= 16; w = w + 5) {
+                Assertions.assertEquals(d.prettyPrint(w),
+                        d.lines(w).collect(Collectors.joining("\n")));
+            }
+        }
+    }
+
+    @Test public void iterateLines() {
+        Doc d = docGroup(docTxt("a"), docNst(2, docBrk(), docTxt("b")), docBrk());
+        Iterator<String> it = d.lineIterator(1);
+        Assertions.assertEquals("a", it.next());
+        Assertions.assertEquals("  b", it.next());
+        Assertions.assertTrue(it.hasNext());
+        Assertions.assertEquals("", it.next());
+        Assertions.assertFalse(it.hasNext());
+        Assertions.assertThrows(NoSuchElementException.class, it::next);
+        Assertions.assertEquals(List.of(""), docNil().lines(80).toList());
+    }
+
+    @Test public void layoutStopsWithTheStream() {
+        int[] built = {0};
+        Doc d = mkLazyHzJnListDoc(docBrk(), 1_000_000, i -> {
+            built[0]++;
+            return docTxt("line" + i);
+        });
+        Assertions.assertEquals("line42", d.lines(80)
+                .filter(l -> l.endsWith("42")).findFirst().orElseThrow());
+        Assertions.assertTrue(built[0] < 200);
+
+        built[0] = 0;
+        Stream<String> lines = d.lines(80);
+        try {
+            Iterator<String> it = lines.iterator();
+            it.next();
+            lines.close();
+            Assertions.assertFalse(it.hasNext());
+        } finally {
+            // closing again does nothing
+            lines.close();
+        }
+        Assertions.assertTrue(built[0] < 100);
+    }
+}
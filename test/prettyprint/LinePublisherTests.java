@@ -0,0 +1,128 @@
+package prettyprint;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static prettyprint.DocFactory.*;
+
+public final class LinePublisherTests {
+
+    // records what it's sent; requests more only when asked to, and
+    // cancels once it has cancelAfter lines
+    private static final class Recorder implements Flow.Subscriber<CharSequence> {
+
+        final List<String> lines = new ArrayList<>();
+        final CompletableFuture<List<String>> done = new CompletableFuture<>();
+        Flow.Subscription subscription;
+        final long initialRequest;
+        long cancelAfter = Long.MAX_VALUE;
+
+        Recorder(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(initialRequest);
+        }
+
+        @Override public void onNext(CharSequence line) {
+            lines.add(line.toString());
+            if (lines.size() == cancelAfter) {
+                subscription.cancel();
+            }
+        }
+
+        @Override public void onError(Throwable t) {
+            done.completeExceptionally(t);
+        }
+
+        @Override public void onComplete() {
+            done.complete(lines);
+        }
+    }
+
+    @Test public void publishesLinesOfRandomDocs() {
+        Random rnd = new Random(9);
+        for (int trial = 0; trial < 300; trial++) {
+            Doc d = LinearPrettyPrinterTests.randomDoc(rnd, 7);
+            for (int w = -1; w <= 16; w = w + 5) {
+                Recorder r = new Recorder(Long.MAX_VALUE);
+                new LinePublisher(d, w, Runnable::run).subscribe(r);
+                Assertions.assertEquals(d.prettyPrint(w),
+                        String.join("\n", r.done.join()));
+            }
+        }
+    }
+
+    @Test public void laysOutOnlyWhatIsRequested() {
+        int[] built = {0};
+        Doc d = mkLazyHzJnListDoc(docBrk(), 1_000_000, i -> {
+            built[0]++;
+            return docTxt("line" + i);
+        });
+        Recorder r = new Recorder(3);
+        new LinePublisher(d, 80, Runnable::run).subscribe(r);
+        Assertions.assertEquals(List.of("line0", "line1", "line2"), r.lines);
+        Assertions.assertTrue(built[0] < 100);
+        r.subscription.request(2);
+        Assertions.assertEquals(5, r.lines.size());
+        Assertions.assertEquals("line4", r.lines.get(4));
+        r.subscription.cancel();
+        r.subscription.request(10);
+        Assertions.assertEquals(5, r.lines.size());
+        Assertions.assertFalse(r.done.isDone());
+    }
+
+    @Test public void laysOutNothingAfterCancel() {
+        int[] built = {0};
+        Doc d = mkLazyHzJnListDoc(docBrk(), 1_000_000, i -> {
+            built[0]++;
+            return docTxt("line" + i);
+        });
+        // cancels from onNext, with plenty of demand left
+        Recorder r = new Recorder(Long.MAX_VALUE);
+        r.cancelAfter = 3;
+        new LinePublisher(d, 80, Runnable::run).subscribe(r);
+        Assertions.assertEquals(List.of("line0", "line1", "line2"), r.lines);
+        int builtAtCancel = built[0];
+        r.subscription.request(10);
+        Assertions.assertEquals(builtAtCancel, built[0]);
+        Assertions.assertEquals(3, r.lines.size());
+        Assertions.assertFalse(r.done.isDone());
+    }
+
+    @Test public void publishesOnExecutor() throws Exception {
+        List<Doc> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            items.add(docGroup(docTxt("item" + i), docBrk(), docTxt("" + i)));
+        }
+        Doc d = docGroup(docTxt("["), docNst(1,
+                mkHzJnListDoc(mkHzListDoc(docTxt(","), docBrk()), items)),
+                docTxt("]"));
+        Recorder r = new Recorder(Long.MAX_VALUE);
+        new LinePublisher(d, 20).subscribe(r);
+        Assertions.assertEquals(d.prettyPrint(20),
+                String.join("\n", r.done.get(30, TimeUnit.SECONDS)));
+    }
+
+    @Test public void signalsErrors() {
+        Doc d = mkHzJnListDoc(docBrk(), docTxt("a"),
+                docLazy(() -> { throw new IllegalStateException("boom"); }));
+        Recorder r = new Recorder(Long.MAX_VALUE);
+        new LinePublisher(d, 80, Runnable::run).subscribe(r);
+        Assertions.assertTrue(r.done.isCompletedExceptionally());
+
+        Recorder bad = new Recorder(0);
+        new LinePublisher(docTxt("x"), 80, Runnable::run).subscribe(bad);
+        Assertions.assertTrue(bad.done.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,154 @@
+package prettyprint;
+
+import prettyprint.Docs.Doc;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+import static prettyprint.Docs.BRK;
+
+public final class LinearPrettyPrinterTests {
+
+    private static String linear(Doc d, int width) {
+        StringBuilder sb = new StringBuilder();
+        new LinearPrettyPrinter(width, sb).format(d);
+        return sb.toString();
+    }
+
+    private static void assertSameLayout(Doc d, int width) {
+        Assertions.assertEquals(d.prettyPrint(width), linear(d, width),
+                () -> "width " + width + ": " + d);
+    }
+
+    @Test public void matchesGreedyOnIteDocs() {
+        Doc cond = binOpDoc("a", "==", "b");
+        Doc inner = iteDoc(cond, binOpDoc("a", "<<", "2"), cond);
+        Doc d = iteDoc(binOpDoc("|S|", "<", "|T|"), inner,
+                binOpDoc("S", "o", "T"));
+        for (int w = -1; w <= 60; w++) {
+            assertSameLayout(d, w);
+        }
+    }
+
+    @Test public void matchesGreedyOnSimpleDocs() {
+        assertSameLayout(mkHzListDoc(docNil(), docNil()), 1);
+        assertSameLayout(mkHzListDoc(docNil(), docBrk(), docNil()), 1);
+        assertSameLayout(mkHzListDoc(docGroup(docTxt("a")), docBrk(),
+                docGroup(docTxt("b"))), 1);
+        assertSameLayout(mkHzListDoc(docNst(1, docTxt("a")), docBrk(),
+                docNst(1, docTxt("b"))), 1);
+    }
+
+    @Test public void matchesGreedyOnRandomDocs() {
+        Random rnd = new Random(42);
+        for (int trial = 0; trial < 500; trial++) {
+            Doc d = randomDoc(rnd, 6);
+            for (int w = 0; w <= 24; w++) {
+                assertSameLayout(d, w);
+            }
+        }
+    }
+
+    @Test public void matchesGreedyOnRandomFills() {
+        Random rnd = new Random(11);
+        for (int trial = 0; trial < 500; trial++) {
+            Doc d = randomFillDoc(rnd, 3);
+            Doc lazy = lazify(d);
+            for (int w = 0; w <= 24; w++) {
+                assertSameLayout(d, w);
+                Assertions.assertEquals(d.prettyPrint(w), linear(lazy, w));
+            }
+        }
+    }
+
+    @Test public void lazyDocsMatchEagerOnes() {
+        Random rnd = new Random(7);
+        for (int trial = 0; trial < 300; trial++) {
+            Doc d = randomDoc(rnd, 6);
+            Doc lazy = lazify(d);
+            for (int w = 0; w <= 24; w++) {
+                String expected = d.prettyPrint(w);
+                Assertions.assertEquals(expected, lazy.prettyPrint(w));
+                Assertions.assertEquals(expected, linear(lazy, w));
+            }
+        }
+    }
+
+    @Test public void deeplyNestedGroupsInLinearTime() {
+        // quadratic for the greedy printer: each group's fits check rescans
+        // all the groups nested inside it
+        int n = 200_000;
+        Doc d = docTxt("x");
+        for (int i = 0; i < n; i++) {
+            d = docGroup(docTxt("("), d, docBrk(), docTxt(")"));
+        }
+        String out = linear(d, 80);
+        Assertions.assertTrue(out.startsWith("(".repeat(n)));
+        Assertions.assertEquals(2L * n + 1,
+                out.chars().filter(c -> c != '\n' && c != ' ').count());
+    }
+
+    static Doc randomDoc(Random rnd, int depth) {
+        int pick = depth == 0 ? rnd.nextInt(3) : rnd.nextInt(7);
+        return switch (pick) {
+            case 0 -> docTxt("abcdefgh".substring(0, rnd.nextInt(5)));
+            case 1 -> docBrk();
+            case 2 -> docNil();
+            case 3 -> docNst(rnd.nextInt(4), randomDoc(rnd, depth - 1));
+            case 4 -> docGroup(randomDoc(rnd, depth - 1));
+            case 5 -> new Docs.DocCons(randomDoc(rnd, depth - 1),
+                    randomDoc(rnd, depth - 1));
+            default -> mkHzListDoc(randomDoc(rnd, depth - 1),
+                    randomDoc(rnd, depth - 1), randomDoc(rnd, depth - 1));
+        };
+    }
+
+    // random docs with fills (of random docs, and of fills) in them
+    private static Doc randomFillDoc(Random rnd, int depth) {
+        if (depth == 0) {
+            return randomDoc(rnd, 2);
+        }
+        Doc[] items = new Doc[rnd.nextInt(6)];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = rnd.nextInt(4) == 0
+                    ? randomFillDoc(rnd, depth - 1)
+                    : randomDoc(rnd, rnd.nextInt(3));
+        }
+        Doc fill = docFill(items);
+        return switch (rnd.nextInt(4)) {
+            case 0 -> docGroup(fill);
+            case 1 -> mkHzListDoc(randomDoc(rnd, 2), fill, randomDoc(rnd, 2));
+            case 2 -> docNst(2, mkHzListDoc(docTxt("ab"), docBrk(), fill));
+            default -> fill;
+        };
+    }
+
+    // the same doc with every composite node hidden behind a lazy doc
+    private static Doc lazify(Doc d) {
+        Doc result = switch (d) {
+            case Docs.DocCons c -> new Docs.DocCons(lazify(c.hd()), lazify(c.tl()));
+            case Docs.DocConcat c -> new Docs.DocConcat(Arrays.stream(c.docs())
+                    .map(LinearPrettyPrinterTests::lazify).toArray(Doc[]::new));
+            case Docs.DocNest n -> docNst(n.indent(), lazify(n.doc()));
+            case Docs.DocGroup g -> docGroup(lazify(g.doc()));
+            case Docs.DocFill f -> new Docs.DocFill(Arrays.stream(f.items())
+                    .map(LinearPrettyPrinterTests::lazify).toArray(Doc[]::new));
+            default -> d;
+        };
+        return result == d ? d : docLazy(() -> result);
+    }
+
+    private static Doc binOpDoc(String l, String o, String r) {
+        return docGroup(docNst(2, docGroup(l, BRK, o), docBrk(), docTxt(r)));
+    }
+
+    private static Doc iteDoc(Doc c, Doc e1, Doc e2) {
+        return docGroup(
+                docGroup(docNst(2, docTxt("if"), docBrk(), c)), docBrk(),
+                docGroup(docNst(2, docTxt("then"), docBrk(), e1)), docBrk(),
+                docGroup(docNst(2, docTxt("else"), docBrk(), e2)));
+    }
+}
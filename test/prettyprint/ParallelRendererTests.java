@@ -0,0 +1,97 @@
+package prettyprint;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static prettyprint.DocFactory.*;
+
+public final class ParallelRendererTests {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll public static void setup() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll public static void teardown() {
+        pool.shutdown();
+    }
+
+    private static Doc config(int depth, int fanout, int[] counter) {
+        if (depth == 0) {
+            return docTxt("key" + counter[0]++ + " = value");
+        }
+        List<Doc> entries = new ArrayList<>();
+        for (int i = 0; i < fanout; i++) {
+            entries.add(config(depth - 1, fanout, counter));
+        }
+        return docGroup(docTxt("section {"), docNst(2, docBrk(),
+                mkHzJnListDoc(mkHzListDoc(docTxt(";"), docBrk()), entries)),
+                docBrk(), docTxt("}"));
+    }
+
+    @Test public void matchesPrettyPrinterOnLargeDocs() {
+        Doc d = config(5, 8, new int[] {0});
+        for (int w : new int[] {-1, 0, 40, 80, 1000}) {
+            // small chunks, so the doc gets cut up a lot
+            ParallelRenderer r = new ParallelRenderer(w, pool, 100);
+            Assertions.assertEquals(d.prettyPrint(w), r.prettyPrint(d));
+        }
+    }
+
+    @Test public void matchesPrettyPrinterOnRandomDocs() {
+        Random rnd = new Random(3);
+        for (int trial = 0; trial < 300; trial++) {
+            Doc d = LinearPrettyPrinterTests.randomDoc(rnd, 7);
+            for (int w = -1; w <= 24; w++) {
+                ParallelRenderer r = new ParallelRenderer(w, pool, 1);
+                Assertions.assertEquals(d.prettyPrint(w), r.prettyPrint(d),
+                        "width " + w + ": " + d);
+            }
+        }
+    }
+
+    @Test public void rendersLazyDocs() {
+        int n = 100_000;
+        Doc d = docGroup(docTxt("["), docNst(1, mkLazyHzJnListDoc(
+                mkHzListDoc(docTxt(","), docBrk()), n, i -> docTxt("row" + i))),
+                docTxt("]"));
+        StringWriter expected = new StringWriter();
+        d.render(80, expected);
+        StringWriter out = new StringWriter();
+        new ParallelRenderer(80, pool, 1000).render(d, out);
+        Assertions.assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test public void layOutGroupsAtNegativeIndents() {
+        // the inner group is wider than the page, but starts at column -4
+        Doc d = docGroup(docTxt("x"), docNst(-4, docBrk(),
+                docGroup(docTxt("abc"), docBrk(), docTxt("def"))));
+        ParallelRenderer r = new ParallelRenderer(4, pool, 1);
+        Assertions.assertEquals(d.prettyPrint(4), r.prettyPrint(d));
+    }
+
+    @Test public void layOutGroupsAfterLinesLeftOfMargin() {
+        // the second group is at indent 0 and wider than the page, but the
+        // line it starts on was broken at -4, so it starts at column -3
+        Doc d = docGroup(docNst(-4, docTxt("x"), docBrk(), docTxt("y")),
+                docGroup(docTxt("abc"), docBrk(), docTxt("def")));
+        Assertions.assertEquals("x\nyabc def", d.prettyPrint(4));
+        ParallelRenderer r = new ParallelRenderer(4, pool, 1);
+        Assertions.assertEquals(d.prettyPrint(4), r.prettyPrint(d));
+    }
+
+    @Test public void throwOnNullPool() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ParallelRenderer(80, null));
+    }
+}
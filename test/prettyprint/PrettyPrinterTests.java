@@ -5,6 +5,27 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static prettyprint.DocFactory.*;
 import static prettyprint.Docs.BRK;
 
@@ -91,6 +112,361 @@ public final class PrettyPrinterTests {
                         docNst(1, docTxt("b"))).prettyPrint(1));
     }
 
+    // stack safety tests (these docs are far deeper/longer than the default
+    // thread stack could handle if the printer recursed once per node)
+
+    @Test public void printLongConsChain() {
+        int n = 200_000;
+        Doc result = docNil();
+        for (int i = 0; i < n; i++) {
+            result = new Docs.DocCons(docTxt("x"), result);
+        }
+        Assertions.assertEquals("x".repeat(n), result.prettyPrint(80));
+    }
+
+    @Test public void printLongConcat() {
+        int n = 200_000;
+        Doc[] docs = new Doc[n];
+        Arrays.fill(docs, docTxt("x"));
+        Assertions.assertEquals("x".repeat(n),
+                mkHzListDoc(docs).prettyPrint(80));
+    }
+
+    @Test public void concatPrintsLikeConsChain() {
+        List<Doc> items = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            items.add(i % 7 == 0 ? binOpDoc("a", "+", "b" + i) : docTxt("x" + i));
+        }
+        Doc delim = mkHzListDoc(docTxt(","), docGroup(docBrk()));
+        Doc concat = docGroup(docNst(2, mkHzJnListDoc(delim, items)));
+        Doc cons = docNil();
+        for (int i = items.size() - 1; i >= 0; i--) {
+            cons = new Docs.DocCons(items.get(i),
+                    i == items.size() - 1 ? cons : new Docs.DocCons(delim, cons));
+        }
+        cons = docGroup(docNst(2, cons));
+        Assertions.assertEquals(cons.flatWidth(), concat.flatWidth());
+        for (int w = -1; w < 120; w = w + 3) {
+            Assertions.assertEquals(cons.prettyPrint(w), concat.prettyPrint(w));
+        }
+    }
+
+    @Test public void docConcatSplicesSmallPieces() {
+        Doc small = mkHzListDoc(docTxt("a"), docTxt("b"));
+        Doc[] many = new Doc[100];
+        Arrays.fill(many, docTxt("c"));
+        Doc large = mkHzListDoc(many);
+        Doc d = docConcat(small, docNil(), large, small);
+        Docs.DocConcat c = (Docs.DocConcat) d;
+        Assertions.assertEquals(5, c.size());
+        Assertions.assertSame(large, c.get(2));
+        Assertions.assertEquals("ab" + "c".repeat(100) + "ab", d.prettyPrint());
+        Assertions.assertSame(small, docConcat(docNil(), small));
+    }
+
+    @Test public void printLongBrokenList() {
+        int n = 200_000;
+        List<Doc> docs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            docs.add(docTxt("x"));
+        }
+        String expected = String.join("\n", Collections.nCopies(n, "x"));
+        Assertions.assertEquals(expected,
+                mkHzJnListDoc(docBrk(), docs).prettyPrint(80));
+    }
+
+    @Test public void printDeeplyNestedDocs() {
+        int n = 200_000;
+        Doc result = docTxt("x");
+        for (int i = 0; i < n; i++) {
+            // left leaning, so each cons nests the previous one
+            result = docNst(0, mkHzListDoc(result, docTxt("x")));
+        }
+        Assertions.assertEquals("x".repeat(n + 1), result.prettyPrint(80));
+    }
+
+    // flat width metadata tests
+
+    @Test public void flatWidthMatchesFlatRendering() {
+        Doc d = iteDoc(binOpDoc("a", "==", "b"), binOpDoc("a", "<<", "2"),
+                binOpDoc("a", "==", "b"));
+        Assertions.assertEquals(d.prettyPrint(Integer.MAX_VALUE).length(),
+                d.flatWidth());
+        Assertions.assertTrue(d.hasBreak());
+        Assertions.assertFalse(docGroup("a", "b").hasBreak());
+    }
+
+    @Test public void flatWidthSaturates() {
+        Doc big = docTxt("x".repeat(1 << 20));
+        Doc d = big;
+        for (int i = 0; i < 12; i++) {
+            d = mkHzListDoc(d, d);
+        }
+        Assertions.assertEquals(Integer.MAX_VALUE, d.flatWidth());
+    }
+
+    @Test public void throwOnInconsistentMetadata() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Docs.DocGroup(docTxt("ab"), 3, false));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Docs.DocCons(docTxt("a"), docBrk(), 2, false));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Docs.DocConcat(new Doc[] {docBrk()}, 1, false));
+    }
+
+    // streaming output tests
+
+    @Test public void renderToWriter() {
+        Doc d = iteDoc(binOpDoc("a", "==", "b"), binOpDoc("a", "<<", "2"),
+                binOpDoc("a", "==", "b"));
+        StringWriter out = new StringWriter();
+        d.render(10, out);
+        Assertions.assertEquals(d.prettyPrint(10), out.toString());
+    }
+
+    @Test public void renderThroughSmallBuffer() {
+        Doc d = mkHzJnListDoc(docBrk(), docTxt("alpha"), docTxt("b"),
+                docNst(4, docTxt("gamma"), docBrk(), docTxt("delta")));
+        List<String> chunks = new ArrayList<>();
+        StringBuilder out = new StringBuilder();
+        Appendable recorder = new Appendable() {
+            @Override public Appendable append(CharSequence csq) {
+                chunks.add(csq.toString());
+                out.append(csq);
+                return this;
+            }
+            @Override public Appendable append(CharSequence csq, int s, int e) {
+                return append(csq.subSequence(s, e));
+            }
+            @Override public Appendable append(char c) {
+                return append(String.valueOf(c));
+            }
+        };
+        new PrettyPrinter(1, Sink.of(recorder, 4, false)).format(d);
+        Assertions.assertEquals(d.prettyPrint(1), out.toString());
+        Assertions.assertTrue(chunks.size() > 1);
+    }
+
+    @Test public void renderToChannel() {
+        Doc d = mkHzJnListDoc(docBrk(), docTxt("größe"), docTxt("b"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        d.render(1, Channels.newChannel(bytes));
+        Assertions.assertEquals("größe\nb",
+                bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test public void renderUtf8ToStreamAndBuffer() {
+        Doc d = docGroup(docTxtUtf8("größe"), docNst(70, docBrk(),
+                docTxt("日本 \uD83D\uDE00 \uD800"), docBrk(), docTxtUtf8("x")));
+        String expected = d.prettyPrint(10);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        d.render(10, bytes);
+        Assertions.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8),
+                bytes.toByteArray());
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        new PrettyPrinter(10, buffer).format(d);
+        Assertions.assertEquals(bytes.size(), buffer.position());
+        Assertions.assertThrows(BufferOverflowException.class,
+                () -> new PrettyPrinter(10, ByteBuffer.allocate(16)).format(d));
+    }
+
+    @Test public void renderUtf8ThroughSmallBuffer() {
+        Random rnd = new Random(7);
+        String alphabet = "ab ßé日本\uD83D\uDE00\uD800";
+        for (int trial = 0; trial < 200; trial++) {
+            List<Doc> items = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = rnd.nextInt(12); j > 0; j--) {
+                    sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+                }
+                items.add(rnd.nextBoolean()
+                        ? docTxt(sb.toString()) : docTxtUtf8(sb.toString()));
+            }
+            Doc d = docNst(rnd.nextInt(100), mkHzJnListDoc(docBrk(), items));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new PrettyPrinter(8, new ByteSink(bytes, 4 + rnd.nextInt(8)))
+                    .format(d);
+            Assertions.assertArrayEquals(
+                    d.prettyPrint(8).getBytes(StandardCharsets.UTF_8),
+                    bytes.toByteArray());
+        }
+    }
+
+    @Test public void fillWrapsLikeAParagraph() {
+        Doc d = docFill("the quick brown fox jumps over the lazy dog");
+        Assertions.assertEquals("""
+                the quick
+                brown fox
+                jumps over
+                the lazy
+                dog""", d.prettyPrint(10));
+        Assertions.assertEquals(
+                "the quick brown fox jumps over the lazy dog",
+                d.prettyPrint(80));
+        // the last item is measured along with what follows the fill
+        Doc list = docGroup(docTxt("["), docNst(1,
+                mkFillJnListDoc(docTxt(","), List.of(docTxt("aa"),
+                        docTxt("bb"), docTxt("cc")))), docTxt("]"));
+        Assertions.assertEquals("[aa, bb,\n cc]", list.prettyPrint(9));
+        Assertions.assertEquals("[aa, bb, cc]", list.prettyPrint(12));
+        // a fill inside a flat group is flat
+        Assertions.assertEquals("a b c",
+                docGroup(docFill("a b c")).prettyPrint(80));
+    }
+
+    @Test public void fillOfManyItemsInLinearTime() {
+        // each break is decided by measuring just the item after it; had
+        // every item been a group, each would measure the rest of the fill
+        int n = 200_000;
+        List<Doc> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            items.add(docTxt("w" + i % 10));
+        }
+        String out = docFill(items).prettyPrint(80);
+        // 27 items of two chars, and the spaces between them, to a line
+        Assertions.assertEquals((n - 1) / 27, out.lines().count() - 1);
+        Assertions.assertTrue(out.lines().allMatch(l -> l.length() <= 80));
+    }
+
+    @Test public void lazyDocsPrintLikeEagerOnes() {
+        List<Doc> items = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            items.add(docTxt("item" + i));
+        }
+        Doc delim = mkHzListDoc(docTxt(","), docGroup(docBrk()));
+        Doc eager = docGroup(docTxt("["),
+                docNst(1, mkHzJnListDoc(delim, items)), docTxt("]"));
+        Doc lazy = docGroup(docTxt("["),
+                docNst(1, mkLazyHzJnListDoc(delim, items.size(), items::get)),
+                docTxt("]"));
+        for (int w = -1; w < 400; w = w + 7) {
+            Assertions.assertEquals(eager.prettyPrint(w), lazy.prettyPrint(w));
+        }
+    }
+
+    @Test public void lazyDocInsideGroupIsMeasured() {
+        Doc d = docGroup(docTxt("a"), docLazy(() -> mkHzListDoc("b", BRK, "c")));
+        Assertions.assertEquals(-1, d.flatWidth());
+        Assertions.assertEquals("ab c", d.prettyPrint(4));
+        Assertions.assertEquals("ab\nc", d.prettyPrint(3));
+    }
+
+    @Test public void lazyDocIsExpandedOnDemand() {
+        // items are only built as they're printed, so nothing but the
+        // current item needs to be in memory
+        int n = 200_000;
+        int[] built = {0};
+        Doc d = mkLazyHzJnListDoc(mkHzListDoc(docTxt(","), docBrk()), n, i -> {
+            built[0]++;
+            return docTxt("row" + i);
+        });
+        Assertions.assertEquals(0, built[0]);
+        StringWriter out = new StringWriter();
+        d.render(80, out);
+        // measuring the (root) group expands the items on its first line
+        // once more, but no further than the width
+        Assertions.assertTrue(built[0] >= n && built[0] < n + 80);
+        Assertions.assertTrue(out.toString().startsWith("row0,\nrow1,\n"));
+        Assertions.assertTrue(out.toString().endsWith("row199999"));
+    }
+
+    @Test public void throwOnNullLazyDoc() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> docLazy(null));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> docLazy(() -> null).prettyPrint());
+    }
+
+    @Test public void reusePrinterAfterReset() {
+        StringBuilder first = new StringBuilder();
+        PrettyPrinter p = new PrettyPrinter(3, first);
+        p.format(mkHzListDoc("ab", BRK, "c"));
+        StringBuilder second = new StringBuilder();
+        p.reset(80, second);
+        p.format(mkHzListDoc("ab", BRK, "c"));
+        Assertions.assertEquals("ab\nc", first.toString());
+        Assertions.assertEquals("ab c", second.toString());
+    }
+
+    @Test public void printFromInsideLazyDoc() {
+        // the thread's reusable printer is busy while the supplier runs
+        Doc d = docLazy(() -> docTxt(mkHzListDoc("b", BRK, "c").prettyPrint(1)));
+        Assertions.assertEquals("a\nb\nc", mkHzListDoc(docTxt("a\n"), d).prettyPrint());
+        Assertions.assertEquals("x", docTxt("x").prettyPrint());
+    }
+
+    @Test public void printSharedDocConcurrently() throws Exception {
+        List<Doc> items = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            items.add(docGroup(docTxt("item" + i), docBrk(), docTxt("" + i)));
+        }
+        Doc d = docGroup(docTxt("["),
+                docNst(1, mkHzJnListDoc(mkHzListDoc(docTxt(","), docBrk()), items)),
+                docTxt("]"));
+        StringBuilder sb = new StringBuilder();
+        new PrettyPrinter(40, sb).format(d);
+        String expected = sb.toString();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                results.add(pool.submit(() -> d.prettyPrint(40)));
+            }
+            for (Future<String> r : results) {
+                Assertions.assertEquals(expected, r.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test public void reportRenderMetrics() {
+        List<RenderMetrics> reported = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        PrettyPrinter p = new PrettyPrinter(5, sb);
+        p.setRenderListener(reported::add);
+        p.format(docGroup(docTxt("ab"), docBrk(),
+                docNst(2, docGroup(docTxt("c"), docBrk(), docTxt("d"))),
+                docTxt("!")));
+        Assertions.assertEquals("ab\nc d!", sb.toString());
+        RenderMetrics m = reported.get(0);
+        // both groups are checked, but the root one is too wide to need
+        // measuring past its flat width; only the inner one's continuation
+        // gets scanned
+        Assertions.assertEquals(1, m.groupsBroken());
+        Assertions.assertEquals(1, m.groupsFlat());
+        Assertions.assertEquals(sb.length(), m.chars());
+        Assertions.assertEquals(2, m.fitsCalls());
+        Assertions.assertTrue(m.nodes() >= 9);
+        Assertions.assertTrue(m.fitsSteps() > 0);
+        Assertions.assertTrue(m.maxStackDepth() >= 2);
+        Assertions.assertTrue(m.nanos() >= 0);
+
+        p.setRenderListener(null);
+        p.format(docTxt("x"));
+        Assertions.assertEquals(1, reported.size());
+    }
+
+    @Test public void recordRenderMetricsAsJfrEvents() throws Exception {
+        Path file = Files.createTempFile("render", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("prettyprint.Render");
+            recording.start();
+            PrettyPrinter p = new PrettyPrinter(3, new StringBuilder());
+            p.setRenderListener(RenderListener.jfr());
+            p.format(mkHzListDoc("ab", BRK, "c"));
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Assertions.assertEquals(1, events.size());
+            Assertions.assertEquals(4, events.get(0).getLong("chars"));
+            Assertions.assertEquals(1, events.get(0).getLong("groupsBroken"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     // sample if-then-else (ite) tests
 
     private Doc cond, expr1, expr2, doc;
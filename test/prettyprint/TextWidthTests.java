@@ -0,0 +1,64 @@
+package prettyprint;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import static prettyprint.DocFactory.*;
+
+public final class TextWidthTests {
+
+    @Test public void latinTextIsOneColumnPerChar() {
+        Assertions.assertEquals(0, TextWidth.of(""));
+        Assertions.assertEquals(5, TextWidth.of("hello"));
+        Assertions.assertEquals(5, TextWidth.of("größe"));
+        Assertions.assertEquals(3, TextWidth.of("ĀāĂ"));
+    }
+
+    @Test public void wideCharsTakeTwoColumns() {
+        Assertions.assertEquals(4, TextWidth.of("日本"));
+        Assertions.assertEquals(6, TextWidth.of("a한글b"));
+        Assertions.assertEquals(2, TextWidth.of("Ａ"));
+        // outside the bmp
+        Assertions.assertEquals(2, TextWidth.of("𠀀"));
+    }
+
+    @Test public void combiningMarksTakeNoColumns() {
+        Assertions.assertEquals(1, TextWidth.of("e\u0301"));
+        Assertions.assertEquals(3, TextWidth.of("xe\u0301\u0323y"));
+        // a hangul syllable spelled out in conjoining jamo
+        Assertions.assertEquals(2, TextWidth.of("\u1100\u1161\u11A8"));
+        Assertions.assertEquals(0, TextWidth.of("\u200B"));
+    }
+
+    @Test public void emojiClustersTakeTwoColumns() {
+        // grinning face
+        Assertions.assertEquals(2, TextWidth.of("\uD83D\uDE00"));
+        // thumbs up, medium skin tone
+        Assertions.assertEquals(2, TextWidth.of("\uD83D\uDC4D\uD83C\uDFFD"));
+        // family: man, woman, girl (zwj sequence)
+        Assertions.assertEquals(2, TextWidth.of(
+                "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67"));
+        // two flags
+        Assertions.assertEquals(4, TextWidth.of(
+                "\uD83C\uDDEF\uD83C\uDDF5\uD83C\uDDFA\uD83C\uDDF8"));
+        // heavy black heart with emoji presentation
+        Assertions.assertEquals(2, TextWidth.of("\u2764\uFE0F"));
+        Assertions.assertEquals(1, TextWidth.of("\u2764"));
+    }
+
+    @Test public void measureRange() {
+        Assertions.assertEquals(5, TextWidth.of("ab日本cd", 1, 4));
+        Assertions.assertEquals(2, TextWidth.of("abcd", 1, 3));
+    }
+
+    @Test public void printerCountsColumnsNotChars() {
+        Doc d = docGroup(docTxt("日本語"), docBrk(), docTxt("テキスト"));
+        Assertions.assertEquals(15, d.flatWidth());
+        Assertions.assertEquals("日本語 テキスト", d.prettyPrint(15));
+        Assertions.assertEquals("日本語\nテキスト", d.prettyPrint(14));
+        StringBuilder sb = new StringBuilder();
+        new LinearPrettyPrinter(14, sb).format(d);
+        Assertions.assertEquals("日本語\nテキスト", sb.toString());
+    }
+}
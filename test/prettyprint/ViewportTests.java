@@ -0,0 +1,112 @@
+package prettyprint;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import prettyprint.Docs.Doc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static prettyprint.DocFactory.*;
+
+public final class ViewportTests {
+
+    // what slicing the whole output gives
+    private static String slice(String output, int from, int to) {
+        String[] lines = output.split("\n", -1);
+        return String.join("\n", Arrays.asList(lines)
+                .subList(Math.min(from, lines.length), Math.min(to, lines.length)));
+    }
+
+    private static Doc listing(int n) {
+        List<Doc> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            rows.add(docGroup(docTxt("row" + i + " {"),
+                    docNst(4, docBrk(), docTxt("a = " + i), docTxt(";"),
+                            docBrk(), docTxt("b = " + i * 7)),
+                    docBrk(), docTxt("}")));
+        }
+        return docGroup(docTxt("begin"), docNst(2, docBrk(),
+                mkHzJnListDoc(docBrk(), rows)), docBrk(), docTxt("end"));
+    }
+
+    @Test public void linesMatchSlicedOutput() {
+        Doc d = listing(500);
+        String full = d.prettyPrint(12);
+        Viewport v = new Viewport(d, 12, 16);
+        Random rnd = new Random(1);
+        for (int trial = 0; trial < 200; trial++) {
+            int from = rnd.nextInt(2100);
+            int to = from + rnd.nextInt(120);
+            Assertions.assertEquals(slice(full, from, to), v.lines(from, to),
+                    "lines " + from + ".." + to);
+        }
+        Assertions.assertTrue(v.checkpoints() > 0);
+        Assertions.assertEquals(full, v.lines(0, Long.MAX_VALUE));
+        Assertions.assertEquals("", v.lines(10, 10));
+    }
+
+    @Test public void linesOfRandomDocs() {
+        Random rnd = new Random(5);
+        for (int trial = 0; trial < 300; trial++) {
+            Doc d = LinearPrettyPrinterTests.randomDoc(rnd, 7);
+            for (int w = -1; w <= 16; w = w + 3) {
+                String full = d.prettyPrint(w);
+                Viewport v = new Viewport(d, w, 1 + rnd.nextInt(3));
+                for (int from = 0; from < 6; from++) {
+                    for (int to = from; to < 8; to++) {
+                        Assertions.assertEquals(slice(full, from, to),
+                                v.lines(from, to), "width " + w + ": " + d);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test public void linesUnderNegativeNests() {
+        // the line "b" starts at indent -2, written with no spaces
+        Doc d = docNst(-2, mkHzListDoc(docTxt("a"), docBrk(), docTxt("b")));
+        String full = d.prettyPrint(1);
+        Assertions.assertEquals("a\nb", full);
+        Viewport v = new Viewport(d, 1);
+        Assertions.assertEquals(slice(full, 1, 2), v.lines(1, 2));
+        Assertions.assertEquals(full, v.lines(0, 2));
+        // and so is a line picked up from a checkpoint
+        d = docNst(-2, mkHzJnListDoc(docBrk(),
+                List.of(docTxt("a"), docTxt("b"), docTxt("c"), docTxt("d"))));
+        full = d.prettyPrint(1);
+        v = new Viewport(d, 1, 1);
+        v.lines(0, 4);
+        for (int from = 0; from < 4; from++) {
+            Assertions.assertEquals(slice(full, from, 4), v.lines(from, 4));
+        }
+    }
+
+    @Test public void stopsAfterLastLine() {
+        int[] built = {0};
+        Doc d = mkLazyHzJnListDoc(docBrk(), 1_000_000, i -> {
+            built[0]++;
+            return docTxt("line" + i);
+        });
+        Viewport v = new Viewport(d, 80);
+        Assertions.assertEquals("line10\nline11", v.lines(10, 12));
+        Assertions.assertTrue(built[0] < 100);
+        // later pages start from a checkpoint, not from the top
+        v.lines(5000, 5001);
+        built[0] = 0;
+        Assertions.assertEquals("line5050", v.lines(5050, 5051));
+        Assertions.assertTrue(built[0] < Viewport.DEFAULT_CHECKPOINT_INTERVAL + 100);
+    }
+
+    @Test public void throwOnInvalidRange() {
+        Viewport v = new Viewport(docTxt("x"), 80);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> v.lines(-1, 2));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> v.lines(3, 2));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Viewport(docTxt("x"), 80, 0));
+    }
+}
@@ -305,4 +305,109 @@ public final class ImmutableListTests {
         Assertions.assertEquals(22, of(11, 22, 33).get(1));
         Assertions.assertEquals(11, of(11, 22, 33).get(0));
     }
+
+    // chunked lists
+
+    private static IList<Integer> consList(int n) {
+        IList<Integer> result = emp();
+        for (int i = n - 1; i >= 0; i--) {
+            result = new NonEmptyList<>(i, result);
+        }
+        return result;
+    }
+
+    @Test public void chunkedListEqualsConsList() {
+        final IList<Integer> chunked = of(0, 1, 2, 3);
+        Assertions.assertInstanceOf(ChunkedList.class, chunked);
+        Assertions.assertEquals(consList(4), chunked);
+        Assertions.assertEquals(chunked, consList(4));
+        Assertions.assertEquals(consList(4).hashCode(), chunked.hashCode());
+        Assertions.assertEquals(consList(4).toString(), chunked.toString());
+    }
+
+    @Test public void chunkedListMatchesAsNonEmp() {
+        IList<Integer> lst = of(1, 2, 3);
+        int sum = 0;
+        while (lst instanceof NonEmptyList<Integer> x) {
+            sum = sum + x.head();
+            lst = x.tail();
+        }
+        Assertions.assertEquals(6, sum);
+        Assertions.assertSame(emp(), lst);
+    }
+
+    @Test public void lengthAndGetOnLargeList() {
+        final int n = 1_000_000;
+        final Integer[] xs = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+        }
+        final IList<Integer> lst = of(xs).cons(-1);
+        Assertions.assertEquals(n + 1, lst.length());
+        Assertions.assertEquals(-1, lst.get(0));
+        Assertions.assertEquals(n - 1, lst.get(n));
+        Assertions.assertEquals(500_000, lst.drop(500_001).head());
+        Assertions.assertEquals(n - 500_001, lst.drop(500_002).length());
+        Assertions.assertThrows(IndexOutOfBoundsException.class,
+                () -> lst.get(n + 1));
+    }
+
+    @Test public void chunkedListIsntAffectedByItsSource() {
+        final Integer[] xs = {1, 2, 3};
+        final IList<Integer> lst = of(xs);
+        xs[0] = 42;
+        Assertions.assertEquals(of(1, 2, 3), lst);
+    }
+
+    @Test public void iterateConsCellsFollowedByChunk() {
+        final IList<Integer> lst = of(2, 3).cons(1).cons(0);
+        final Iterator<Integer> it = lst.iterator();
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(i, it.next());
+        }
+        Assertions.assertFalse(it.hasNext());
+        Assertions.assertThrows(NoSuchElementException.class, it::next);
+    }
+
+    // bulk operations
+
+    @Test public void mapAndFlatMap() {
+        Assertions.assertEquals(of(2, 4, 6), of(1, 2, 3).map(x -> x * 2));
+        Assertions.assertEquals(of(1, 1, 2, 2),
+                of(1, 2).flatMap(x -> of(x, x)));
+        Assertions.assertEquals(emp(), of(1, 2).flatMap(x -> emp()));
+        Assertions.assertEquals(of(1, 2, 3), IList.concat(of(1), of(2, 3)));
+    }
+
+    @Test public void fusedMapFilter() {
+        final var lst = of(1, 2, 3, 4, 5);
+        Assertions.assertEquals(lst.map(x -> x * 3).filter(x -> x % 2 == 0),
+                lst.mapFilter(x -> x * 3, x -> x % 2 == 0));
+        Assertions.assertEquals(lst.filter(x -> x > 2).map(String::valueOf),
+                lst.filterMap(x -> x > 2, String::valueOf));
+    }
+
+    @Test public void bulkOperationsOnLongLists() {
+        // cons cells rather than a chunk, as deep as they come
+        final int n = 1_000_000;
+        final IList<Integer> lst = consList(n);
+        Assertions.assertEquals(2 * n, lst.appendAll(lst).length());
+        Assertions.assertEquals(n, lst.map(x -> x + 1).get(n - 1));
+        Assertions.assertEquals(n / 2, lst.filter(x -> x % 2 == 0).length());
+        Assertions.assertEquals(2 * n, lst.flatMap(x -> of(x, x)).length());
+        Assertions.assertEquals(n / 2,
+                lst.mapFilter(x -> x + 1, x -> x % 2 == 0).length());
+    }
+
+    @Test public void trampolinedOperationsOnLongLists() {
+        final int n = 1_000_000;
+        final IList<Integer> lst = consList(n);
+        Assertions.assertEquals(n - 1, lst.reverse().head());
+        Assertions.assertEquals(n - 1, lst.drop(n - 1).head());
+        Assertions.assertEquals(1, lst.dropWhile(x -> x < n - 1).length());
+        Assertions.assertEquals((long) n * (n - 1) / 2,
+                lst.foldLeft(0L, (acc, x) -> acc + x));
+        Assertions.assertEquals(0, lst.foldRight(-1, (x, acc) -> x));
+        Assertions.assertEquals(n - 1, lst.init().length());
+    }
 }